@@ -0,0 +1,134 @@
+import java.awt.AlphaComposite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.Toolkit;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import javax.swing.JComponent;
+
+/**
+ * Renders AnimatedObjects into a cached, translucent VolatileImage on the calling thread and
+ * copies the changed area straight onto a component, without waiting for the RepaintManager
+ * and the EDT.
+ * 
+ * The back buffer always holds the complete scene, so the component's paintComponent() can
+ * draw it with paint() whenever Swing repaints for its own reasons.
+ */
+public class ActiveRenderer {
+
+    private final JComponent component;
+    private final Rectangle area;
+    private VolatileImage buffer;
+    private boolean redrawAll;
+
+    /**
+     * Creates an ActiveRenderer that draws onto the component. The back buffer is created
+     * on the first render once the component is displayable.
+     * @param component The component to draw onto
+     */
+    public ActiveRenderer(JComponent component) {
+        this.component = component;
+        area = new Rectangle();
+        redrawAll = true;
+    }
+
+    /**
+     * Redraws the dirty area of the back buffer with the objects. The whole buffer is redrawn
+     * instead if it was just created or its contents were lost.
+     * @param snapshot The objects to draw
+     * @param dirty The area that changed since the last render
+     * @param tracker The tracker to report drawn objects to, or null
+     * @return true if the back buffer is ready to be copied, false if the component is not
+     * displayable yet
+     */
+    public synchronized boolean render(RenderSnapshot snapshot, Rectangle dirty,
+        DirtyRegionTracker tracker) {
+        GraphicsConfiguration gc = component.getGraphicsConfiguration();
+        int width = component.getWidth();
+        int height = component.getHeight();
+        if (gc == null || width <= 0 || height <= 0)
+            return false;
+        if (buffer == null || buffer.getWidth() != width || buffer.getHeight() != height)
+            createBuffer(gc, width, height);
+        do {
+            if (buffer.validate(gc) == VolatileImage.IMAGE_INCOMPATIBLE)
+                createBuffer(gc, width, height);
+            else if (buffer.contentsLost())
+                redrawAll = true;
+            if (redrawAll)
+                area.setBounds(0, 0, width, height);
+            else
+                area.setBounds(dirty);
+            Graphics2D g = buffer.createGraphics();
+            g.setClip(area);
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(area.x, area.y, area.width, area.height);
+            g.setComposite(AlphaComposite.SrcOver);
+            long now = System.nanoTime();
+            for (int i = 0; i < snapshot.size(); i++) {
+                int x = snapshot.getX(i);
+                int y = snapshot.getY(i);
+                int objWidth = snapshot.getWidth(i);
+                int objHeight = snapshot.getHeight(i);
+                BufferedImage image = snapshot.getImageAt(i, now);
+                g.drawImage(image, x, y, objWidth, objHeight, null);
+                if (tracker != null)
+                    tracker.drawn(snapshot.getObject(i), x, y, objWidth, objHeight, image);
+            }
+            g.dispose();
+            redrawAll = false;
+        } while (buffer.contentsLost());
+        return true;
+    }
+
+    /**
+     * Copies the last rendered area of the back buffer onto the component, replacing the
+     * pixels (including their alpha) that were there.
+     * @return true if the area was copied, false if the buffer was lost or the component
+     * could not be drawn on, in which case the caller should repaint instead
+     */
+    public synchronized boolean blit() {
+        if (buffer == null || buffer.contentsLost())
+            return false;
+        Graphics g = component.getGraphics();
+        if (g == null)
+            return false;
+        try {
+            Graphics2D g2D = (Graphics2D) g;
+            g2D.setClip(area);
+            g2D.setComposite(AlphaComposite.Src);
+            g2D.drawImage(buffer, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        Toolkit.getDefaultToolkit().sync();
+        return !buffer.contentsLost();
+    }
+
+    /**
+     * Draws the back buffer with the given Graphics, for use in paintComponent().
+     * @param g The Graphics to draw with
+     * @return true if the buffer was drawn, false if there is no valid buffer to draw
+     */
+    public synchronized boolean paint(Graphics g) {
+        if (buffer == null || buffer.contentsLost()) {
+            redrawAll = true;
+            return false;
+        }
+        g.drawImage(buffer, 0, 0, null);
+        return true;
+    }
+
+    /**
+     * Creates a new back buffer, which has to be redrawn completely.
+     */
+    private void createBuffer(GraphicsConfiguration gc, int width, int height) {
+        if (buffer != null)
+            buffer.flush();
+        buffer = gc.createCompatibleVolatileImage(width, height, Transparency.TRANSLUCENT);
+        redrawAll = true;
+    }
+}
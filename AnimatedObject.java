@@ -16,4 +16,45 @@ public interface AnimatedObject {
 
     public boolean intersects(AnimatedObject obj);
 
+    /**
+     * Returns if this object currently has nothing to animate, for example a sleeping pet
+     * while the pointer is still. When every object is quiescent the AnimationEngine drops
+     * to its idle tick rate until an object stops being quiescent or the engine is woken.
+     * Objects are never quiescent unless they override this.
+     * @return true if this object can be ticked less often, false otherwise
+     * @see AnimationEngine#wake()
+     */
+    public default boolean isQuiescent() {
+        return false;
+    }
+
+    /**
+     * Returns the Animation this object shows if it plays a clip timed in milliseconds, so
+     * its frame can be picked when the object is painted rather than when it is ticked. A
+     * RenderSnapshot captures the clip and its start time instead of calling getImage().
+     * Objects have no timed animation unless they override this.
+     * @return The timed Animation being shown, or null if getImage() is what is painted
+     */
+    public default Animation getTimedAnimation() {
+        return null;
+    }
+
+    /**
+     * Returns when this object next has to be ticked to start something at its time, such
+     * as a random event. While every object is quiescent the AnimationEngine ticks at the
+     * earliest of these times even if its idle tick rate would not.
+     * @return The System.nanoTime() of the next event, or Long.MAX_VALUE if there is none
+     */
+    public default long getNextEventNanos() {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Called on the engine thread once this object has been taken out of the AnimationEngine
+     * and will not be animated again, for releasing what it holds in the engine's systems.
+     * Does nothing unless overridden.
+     */
+    public default void removed() {
+    }
+
 }
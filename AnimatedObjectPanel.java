@@ -1,15 +1,16 @@
 import java.awt.Dimension;
 import java.awt.Graphics;
-import java.awt.MouseInfo;
-import java.awt.Point;
-import java.awt.PointerInfo;
+import java.awt.Rectangle;
 import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
-import java.util.LinkedList;
+import java.awt.event.MouseMotionListener;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
 import javax.swing.JComponent;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -38,67 +39,178 @@ import javax.swing.JPanel;
  * Eventually have the squirrel go up a tree, and then have the dog run back to its usual.
  */
 public class AnimatedObjectPanel extends JPanel
-    implements MouseListener, FocusListener, KeyListener {
+    implements MouseListener, MouseMotionListener, FocusListener, KeyListener {
 
     /**
      * Generated Serial version number
      */
     private static final long serialVersionUID = -2790303964333931829L;
 
+    /**
+     * The size at which the metrics CSV file is rolled over.
+     */
+    private static final long METRICS_CSV_BYTES = 1 << 20;
+
+    /**
+     * How the objects reach the screen.
+     * PASSIVE requests repaints and draws the objects in paintComponent() on the EDT.
+     * ACTIVE draws the objects into a VolatileImage on the engine thread and copies it onto
+     * the panel right away, falling back to a repaint when a visible menu component is in
+     * the way.
+     */
+    public enum RenderMode {
+        PASSIVE, ACTIVE;
+    }
+
     private Dimension screen;
     private ScreenDoggo doggo;
     private JFrame frame;
-    private LinkedList<AnimatedObject> animatedObjects;
+    private AnimationEngine engine;
+    private Thread engineThread;
+    private DirtyRegionTracker dirtyRegions;
+    private ActiveRenderer activeRenderer;
+    private volatile RenderMode renderMode;
+    private FrameStats frameStats;
+    private volatile boolean painted;
+    private final boolean PRINT_FRAMES;
 
     private final JComponent[] components;
 
+    /**
+     * Creates the panel, its doggo and starts animating. The doggo is created as soon as the
+     * pipeline's sprites are ready, its sounds are set as they become ready. The system
+     * property "doggo.render"
+     * selects the RenderMode ("active" or "passive", the default), "doggo.printFrames"
+     * prints engine and frame statistics every second, "doggo.pets" sets how many
+     * doggos there are (1 by default, the others are silent), and "doggo.metricsCsv" names
+     * a file the EngineMetrics are written to every second. The metrics are always
+     * registered as an MBean.
+     */
     public AnimatedObjectPanel(Dimension screen, JFrame frame, ScreenDoggoMenu menu,
-        JComponent[] components, JLabel songLabel, final int MAX_VOLUME) {
+        StartupPipeline startup, JComponent[] components, JLabel songLabel,
+        final int MAX_VOLUME) {
         this.screen = screen;
         this.frame = frame;
         this.components = components;
 
-        animatedObjects = new LinkedList<AnimatedObject>();
         setLayout(null);
         for (JComponent comp : components) {
             add(comp);
         }
         addMouseListener(this);
+        addMouseMotionListener(this);
         addFocusListener(this);
         setSize(screen);
         setOpaque(false);
         setEnabled(true);
         setChildrenVisible(false);
         setFocusable(true);
-        doggo = new ScreenDoggo(this, menu, MAX_VOLUME, songLabel);
-        animatedObjects.add(doggo);
+        PRINT_FRAMES = Boolean.getBoolean("doggo.printFrames");
+        renderMode = "active".equalsIgnoreCase(System.getProperty("doggo.render"))
+            ? RenderMode.ACTIVE : RenderMode.PASSIVE;
+        dirtyRegions = new DirtyRegionTracker();
+        activeRenderer = new ActiveRenderer(this);
+        frameStats = new FrameStats();
+        engine = new AnimationEngine(PRINT_FRAMES);
+        engine.setRenderer(new Renderer());
+        engine.getMetrics().register();
+        String metricsCsv = System.getProperty("doggo.metricsCsv");
+        if (metricsCsv != null)
+            engine.getMetrics().startCsv(new File(metricsCsv), METRICS_CSV_BYTES);
+        BufferedImage[] sprites = null;
+        try {
+            sprites = startup.getSprites();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        doggo = new ScreenDoggo(this, menu, sprites, MAX_VOLUME, songLabel);
+        startup.getBark().thenAccept(doggo::setBark);
+        startup.getSongs().thenAccept(doggo::setSongs);
+        startup.getEvents().thenAccept(doggo::setEvents);
+        addAnimatedObject(doggo);
+        final int PETS = Integer.getInteger("doggo.pets", 1);
+        for (int i = 1; i < PETS; i++) {
+            ScreenDoggo pet = new ScreenDoggo(engine, sprites, menu.doggoIsSmall());
+            pet.setLocation(i * pet.size() * 2 % screen.width,
+                i * pet.size() * 2 / screen.width * pet.size() * 2);
+            addAnimatedObject(pet);
+        }
         setVisible(true);
+
+        // Starts the Animation engine
+        engineThread = new Thread(engine);
+        engineThread.start();
     }
 
     public void addAnimatedObject(AnimatedObject obj) {
-        animatedObjects.add(obj);
+        engine.add(obj);
     }
 
     public void removeAnimatedObject(AnimatedObject obj) {
-        animatedObjects.remove(obj);
+        engine.remove(obj);
     }
 
     public void removeAnimatedObject(int index) {
-        animatedObjects.remove(index);
+        engine.remove(index);
+    }
+
+    /**
+     * Returns the AnimationEngine that animates and renders this panel's objects, for
+     * adjusting its tick and render rates.
+     * @return The AnimationEngine of this panel
+     */
+    public AnimationEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Sets how the objects reach the screen. Can be changed while animating.
+     * @param renderMode The RenderMode to use
+     */
+    public void setRenderMode(RenderMode renderMode) {
+        this.renderMode = renderMode;
+        repaint();
+    }
+
+    /**
+     * Returns how the objects reach the screen.
+     * @return The current RenderMode
+     */
+    public RenderMode getRenderMode() {
+        return renderMode;
+    }
+
+    /**
+     * Returns the statistics of the time between presented frames of the current RenderMode.
+     * @return The FrameStats of this panel
+     */
+    public FrameStats getFrameStats() {
+        return frameStats;
     }
 
     /**
-     * Draws the doggo and the animations instead of the panel
+     * Draws the doggo and the animations instead of the panel. Only the clip area is cleared,
+     * which is the dirty area requested by the Renderer unless Swing repaints more. In the
+     * ACTIVE RenderMode the back buffer of the ActiveRenderer is drawn instead of the objects.
      */
     @Override
     public void paintComponent(Graphics g) {
         try {
             super.paintComponent(g);
-            g.clearRect(0, 0, screen.width, screen.height);
+            Rectangle clip = g.getClipBounds();
+            if (clip != null)
+                g.clearRect(clip.x, clip.y, clip.width, clip.height);
+            else
+                g.clearRect(0, 0, screen.width, screen.height);
 
             paintChildren(g);
             // paint all objects
-            paintAnimations(g);
+            if (renderMode == RenderMode.PASSIVE) {
+                paintAnimations(g);
+                frameStats.frame();
+            } else if (!activeRenderer.paint(g)) {
+                paintAnimations(g);
+            }
 
             // g.dispose();
         } catch (Exception e) {
@@ -109,34 +221,60 @@ public class AnimatedObjectPanel extends JPanel
     }
 
     private void paintAnimations(Graphics g) {
-        for (AnimatedObject obj : animatedObjects) {
-            g.drawImage(obj.getImage(), obj.getX(), obj.getY(), obj.getX() + obj.getWidth(),
-                obj.getY() + obj.getHeight(), 0, 0, obj.getWidth(), obj.getHeight(), null);
+        long start = System.nanoTime();
+        RenderSnapshot snapshot = engine.getRenderSnapshot();
+        paintObjects(g, snapshot, dirtyRegions);
+        engine.getMetrics().paint(System.nanoTime() - start);
+        if (!painted && snapshot.size() > 0)
+            firstPaint();
+    }
+
+    /**
+     * Draws objects at their captured location and size, reporting what was drawn to a
+     * DirtyRegionTracker.
+     * @param g The Graphics to draw with
+     * @param snapshot The objects to draw
+     * @param dirtyRegions The tracker to report the drawn areas to
+     */
+    static void paintObjects(Graphics g, RenderSnapshot snapshot,
+        DirtyRegionTracker dirtyRegions) {
+        long now = System.nanoTime();
+        for (int i = 0; i < snapshot.size(); i++) {
+            int x = snapshot.getX(i);
+            int y = snapshot.getY(i);
+            int width = snapshot.getWidth(i);
+            int height = snapshot.getHeight(i);
+            BufferedImage image = snapshot.getImageAt(i, now);
+            g.drawImage(image, x, y, x + width, y + height, 0, 0, width, height, null);
+            dirtyRegions.drawn(snapshot.getObject(i), x, y, width, height, image);
         }
     }
 
+    /**
+     * Marks the first frame that showed an object in the StartupTrace.
+     */
+    private void firstPaint() {
+        painted = true;
+        StartupTrace.mark(StartupTrace.FIRST_PAINT);
+    }
+
     @Override
     public void mouseClicked(MouseEvent e) {
+        engine.wake();
         if (e.getClickCount() >= 2)
             setChildrenVisible(true);
-        if (isOverDoggo()) {
+        // The topmost doggo under the click, the panel covers the screen from its origin
+        AnimatedObject clicked = engine.getObjectAt(e.getXOnScreen(), e.getYOnScreen());
+        if (clicked instanceof ScreenDoggo) {
+            ScreenDoggo pet = (ScreenDoggo) clicked;
             if (e.getButton() == MouseEvent.BUTTON3)
-                doggo.sit();
+                pet.sit();
             else
-                doggo.stand();
-            doggo.chanceEvent();
+                pet.stand();
+            pet.chanceEvent();
         }
     }
 
-    private boolean isOverDoggo() {
-        PointerInfo pointer = MouseInfo.getPointerInfo();
-        Point p = pointer.getLocation();
-        if (p.x >= doggo.getX() && p.x <= doggo.getX() + doggo.size())
-            if (p.y >= doggo.getY() && p.y <= doggo.getY() + doggo.size())
-                return true;
-        return false;
-    }
-
     public void mute() {
         doggo.mute(true);
     }
@@ -159,6 +297,7 @@ public class AnimatedObjectPanel extends JPanel
 
     @Override
     public void mousePressed(MouseEvent e) {
+        engine.wake();
         // TODO If held for a set duration... will go onto paws and wag!
 
     }
@@ -171,12 +310,24 @@ public class AnimatedObjectPanel extends JPanel
 
     @Override
     public void mouseEntered(MouseEvent e) {
-        // Nothing atm
+        engine.wake();
     }
 
     @Override
     public void mouseExited(MouseEvent e) {
-        // Nothing atm
+        engine.wake();
+    }
+
+    @Override
+    public void mouseMoved(MouseEvent e) {
+        engine.getPointer().update(e.getXOnScreen(), e.getYOnScreen());
+        engine.wake();
+    }
+
+    @Override
+    public void mouseDragged(MouseEvent e) {
+        engine.getPointer().update(e.getXOnScreen(), e.getYOnScreen());
+        engine.wake();
     }
 
     @Override
@@ -211,6 +362,7 @@ public class AnimatedObjectPanel extends JPanel
 
     @Override
     public void keyPressed(KeyEvent e) {
+        engine.wake();
         doggo.keyPressed(e);
     }
 
@@ -218,4 +370,55 @@ public class AnimatedObjectPanel extends JPanel
     public void keyReleased(KeyEvent e) {
         doggo.keyReleased(e);
     }
+
+    /**
+     * Returns if any visible menu component overlaps the area.
+     * @param area The area to check
+     * @return true if a visible component is in the area, false otherwise
+     */
+    private boolean isChildVisibleIn(Rectangle area) {
+        for (JComponent comp : components) {
+            if (comp.isVisible() && comp.getBounds().intersects(area))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Run by the AnimationEngine after objects have been animated. Requests one repaint of
+     * the area covering where objects were and are now drawn, which the RepaintManager
+     * coalesces with any pending repaint. In the ACTIVE RenderMode the area is rendered and
+     * copied onto the panel right away instead.
+     */
+    private class Renderer implements Runnable {
+
+        private long statsTimer = System.currentTimeMillis();
+
+        @Override
+        public void run() {
+            RenderSnapshot snapshot = engine.getTickSnapshot();
+            EngineMetrics metrics = engine.getMetrics();
+            metrics.probeEventQueue();
+            if (dirtyRegions.update(snapshot)) {
+                Rectangle dirty = dirtyRegions.getDirty();
+                long start = System.nanoTime();
+                if (renderMode == RenderMode.ACTIVE
+                    && activeRenderer.render(snapshot, dirty, dirtyRegions)) {
+                    if (isChildVisibleIn(dirty) || !activeRenderer.blit())
+                        repaint(dirty.x, dirty.y, dirty.width, dirty.height);
+                    else if (!painted)
+                        firstPaint();
+                    metrics.paint(System.nanoTime() - start);
+                    frameStats.frame();
+                } else {
+                    repaint(dirty.x, dirty.y, dirty.width, dirty.height);
+                }
+            }
+            if (PRINT_FRAMES && System.currentTimeMillis() - statsTimer > 1000) {
+                statsTimer += 1000;
+                System.out.println(renderMode + " " + frameStats);
+                frameStats.reset();
+            }
+        }
+    }
 }
@@ -0,0 +1,109 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * An array-backed registry of AnimatedObjects that can be iterated by one thread while
+ * other threads add and remove objects.
+ * 
+ * Adds and removes are queued and only applied when update() is called, which the
+ * AnimationEngine does at the start of every tick. Applying the queue publishes a new array
+ * (copy-on-write), so an array returned by getObjects() never changes and iterating it
+ * needs no locking and allocates nothing.
+ */
+public class AnimatedObjectRegistry {
+
+    private static final AnimatedObject[] EMPTY = new AnimatedObject[0];
+
+    private volatile AnimatedObject[] objects;
+    private final ArrayList<Change> changes;
+    private volatile boolean changed;
+
+    /**
+     * Creates an empty AnimatedObjectRegistry.
+     */
+    public AnimatedObjectRegistry() {
+        objects = EMPTY;
+        changes = new ArrayList<>();
+        changed = false;
+    }
+
+    /**
+     * Queues an object to be added on the next update.
+     * @param object The AnimatedObject to add
+     */
+    public synchronized void add(AnimatedObject object) {
+        changes.add(new Change(object, true));
+        changed = true;
+    }
+
+    /**
+     * Queues an object to be removed on the next update.
+     * @param object The AnimatedObject to remove
+     */
+    public synchronized void remove(AnimatedObject object) {
+        changes.add(new Change(object, false));
+        changed = true;
+    }
+
+    /**
+     * Queues the object currently at the index to be removed on the next update.
+     * @param index The index in the array returned by getObjects()
+     * @throws IndexOutOfBoundsException if there is no object at the index
+     */
+    public void remove(int index) {
+        remove(objects[index]);
+    }
+
+    /**
+     * Applies all queued adds and removes in the order they were made, publishing a new
+     * array, and calls removed() on every object that was taken out. Does nothing (and
+     * allocates nothing) if there are no queued changes.
+     */
+    public void update() {
+        if (!changed)
+            return;
+        synchronized (this) {
+            ArrayList<AnimatedObject> list = new ArrayList<>(Arrays.asList(objects));
+            for (Change change : changes) {
+                if (change.ADD)
+                    list.add(change.OBJECT);
+                else if (list.remove(change.OBJECT))
+                    change.OBJECT.removed();
+            }
+            changes.clear();
+            changed = false;
+            objects = list.toArray(new AnimatedObject[list.size()]);
+        }
+    }
+
+    /**
+     * Returns the objects as of the last update. The returned array is never modified by
+     * the registry and must not be modified by the caller.
+     * @return The current objects, in the order they were added
+     */
+    public AnimatedObject[] getObjects() {
+        return objects;
+    }
+
+    /**
+     * Returns the number of objects as of the last update.
+     * @return The number of current objects
+     */
+    public int size() {
+        return objects.length;
+    }
+
+    /**
+     * A queued add or remove.
+     */
+    private static class Change {
+
+        private final AnimatedObject OBJECT;
+        private final boolean ADD;
+
+        private Change(AnimatedObject OBJECT, boolean ADD) {
+            this.OBJECT = OBJECT;
+            this.ADD = ADD;
+        }
+    }
+}
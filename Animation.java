@@ -1,7 +1,9 @@
 import java.awt.image.BufferedImage;
 
 /**
- * Object that holds animations for a given graphic entity.
+ * Object that plays an AnimationClip for a given graphic entity. It only holds the playback
+ * state (a playhead), the sprites and timing belong to the clip, which can be shared by
+ * every entity playing it.
  * @author youngAgFox
  *
  */
@@ -11,17 +13,15 @@ public class Animation {
     public static final int DEFAULT_INITIAL_DELAY_FRAMES = 0;
     public static final boolean DEFAULT_LOOP = true;
 
-    private final String ANIMATION_NAME;
-    private final BufferedImage[] SPRITES;
+    private final AnimationClip CLIP;
     private final int MAX_FRAMES;
-    private final int MAX_INITIAL_DELAY_FRAMES;
-    private final int MAX_SPACER_FRAMES;
-    private final boolean LOOP;
 
     private boolean done;
     private int frame;
     private int spacerFrame;
     private int initialDelayFrame;
+    private boolean started;
+    private long startNanos;
 
     /**
      * Convenience constructor that initializes fields used in displaying animation using
@@ -43,13 +43,17 @@ public class Animation {
      */
     public Animation(String ANIMATION_NAME, BufferedImage[] SPRITES, final int MAX_SPACER_FRAMES,
         final int MAX_INITIAL_DELAY_FRAMES, final boolean LOOP) {
-        this.ANIMATION_NAME = ANIMATION_NAME;
-        this.SPRITES = SPRITES;
-        this.MAX_SPACER_FRAMES = MAX_SPACER_FRAMES;
-        this.MAX_INITIAL_DELAY_FRAMES = MAX_INITIAL_DELAY_FRAMES;
+        this(new AnimationClip(ANIMATION_NAME, SPRITES, 0, SPRITES.length, MAX_SPACER_FRAMES,
+            MAX_INITIAL_DELAY_FRAMES, LOOP));
+    }
 
-        MAX_FRAMES = SPRITES.length - 1;
-        this.LOOP = LOOP;
+    /**
+     * Constructor that plays a clip from its start.
+     * @param CLIP The clip to play, which may be played by other Animations as well
+     */
+    public Animation(final AnimationClip CLIP) {
+        this.CLIP = CLIP;
+        MAX_FRAMES = CLIP.getFrameCount() - 1;
         done = false;
     }
 
@@ -91,16 +95,21 @@ public class Animation {
     }
 
     /**
-     * Returns the image of the current frame, incrementing appropriate timing frames.
+     * Returns the image of the current frame, incrementing appropriate timing frames. A timed
+     * clip is instead evaluated at the current System.nanoTime().
      * @return The image of the current internal frame.
+     * @see #getAnimatedImageAt(long)
      */
     public BufferedImage getAnimatedImage() {
+        if (CLIP.isTimed())
+            return getAnimatedImageAt(System.nanoTime());
         if (!done) {
-            if (!atMax(initialDelayFrame, MAX_INITIAL_DELAY_FRAMES)) {
+            if (!atMax(initialDelayFrame, CLIP.getInitialDelayFrames())) {
                 initialDelayFrame++;
-                return SPRITES[0];
+                return CLIP.getFrame(0);
             }
-            if (LOOP) {
+            final int MAX_SPACER_FRAMES = CLIP.getSpacerFrames();
+            if (CLIP.isLoop()) {
                 if (atMax(spacerFrame, MAX_SPACER_FRAMES))
                     frame = circularIncrement(frame, MAX_FRAMES);
                 spacerFrame = circularIncrement(spacerFrame, MAX_SPACER_FRAMES);
@@ -114,9 +123,55 @@ public class Animation {
                     done = true;
                 }
             }
-            return SPRITES[frame];
+            return CLIP.getFrame(frame);
         } else
-            return SPRITES[MAX_FRAMES];
+            return CLIP.getFrame(MAX_FRAMES);
+    }
+
+    /**
+     * Returns the image of a timed clip at a time, so it can be evaluated once per render
+     * rather than every tick. The clip starts playing the first time it is evaluated after
+     * a reset. An Animation of a clip timed in ticks is not advanced, its current image is
+     * returned.
+     * @param NANO_TIME The System.nanoTime() to evaluate the animation at, which should not
+     * be before earlier evaluations
+     * @return The image of the frame at the time
+     */
+    public BufferedImage getAnimatedImageAt(final long NANO_TIME) {
+        if (CLIP.isTimed())
+            advance(NANO_TIME);
+        return CLIP.getFrame(done ? MAX_FRAMES : frame);
+    }
+
+    /**
+     * Moves the frame of a timed clip to the given time.
+     * @param NANO_TIME The System.nanoTime() to move to
+     */
+    private void advance(final long NANO_TIME) {
+        if (done)
+            return;
+        if (!started) {
+            started = true;
+            startNanos = NANO_TIME;
+        }
+        frame = CLIP.getFrameIndexAt(startNanos, NANO_TIME);
+        if (!CLIP.isLoop() && frame == MAX_FRAMES)
+            done = true;
+    }
+
+    /**
+     * Returns when a timed clip started playing, so the frame can be picked when it is
+     * painted with AnimationClip#getFrameAt(long, long) instead of every tick. The clip starts
+     * playing now if it has not been evaluated since it was reset.
+     * @return The System.nanoTime() the clip started at, or AnimationClip.FINISHED if this
+     * animation is done
+     */
+    public long getStartNanos() {
+        if (!done && !started) {
+            started = true;
+            startNanos = System.nanoTime();
+        }
+        return done ? AnimationClip.FINISHED : startNanos;
     }
 
     /**
@@ -125,7 +180,7 @@ public class Animation {
      * @return The image of the particular frame.
      */
     public BufferedImage getAnimatedImage(final int FRAME) {
-        return SPRITES[FRAME];
+        return CLIP.getFrame(FRAME);
     }
 
     /**
@@ -135,15 +190,19 @@ public class Animation {
         frame = 0;
         spacerFrame = 0;
         initialDelayFrame = 0;
+        started = false;
         done = false;
     }
 
     /**
-     * Returns if this animation is done playing.
+     * Returns if this animation is done playing. A started timed clip is evaluated at the
+     * current time first.
      * @return False if the animation loops, otherwise returns true if the animation 
      * is on the last frame.
      */
     public boolean isDone() {
+        if (started && CLIP.isTimed())
+            advance(System.nanoTime());
         return done;
     }
 
@@ -152,7 +211,15 @@ public class Animation {
      * @return The animation's name.
      */
     public String getName() {
-        return ANIMATION_NAME;
+        return CLIP.getName();
+    }
+
+    /**
+     * Returns the clip this Animation plays.
+     * @return The clip
+     */
+    public AnimationClip getClip() {
+        return CLIP;
     }
 
     /**
@@ -0,0 +1,289 @@
+import java.awt.image.BufferedImage;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.WeakHashMap;
+
+/**
+ * The immutable definition of an animation: a range of sprites and its timing. A clip holds
+ * no playback state, so one clip can be played by any number of Animations (playheads) at
+ * once. The sprites are not copied, a clip is a view of a range of its sprite array.
+ * 
+ * A clip is timed either in ticks (spacer and initial delay frames, counted per call of
+ * Animation.getAnimatedImage()) or, when made with timed() or shareTimed(), in milliseconds
+ * per sprite and of initial delay, evaluated from System.nanoTime() so it plays at the same
+ * speed whatever the tick rate. The frame of a timed clip only depends on when it started,
+ * so it can be picked when it is painted with getFrameAt().
+ * 
+ * Clips made with share() are shared by every caller that asks for the same clip of the
+ * same sprite array, so pets loaded from the same sprite sheet share their clips. A shared
+ * clip is forgotten once nothing holds it, and a sprite array once none of its clips remain.
+ */
+public final class AnimationClip {
+
+    /**
+     * The start time of a timed clip that has finished, or was skipped, and shows its last
+     * sprite.
+     */
+    public static final long FINISHED = Long.MIN_VALUE;
+
+    // Shared clips by sprite array (by identity). A sheet only has a few clips, so they are
+    // searched rather than keyed, which keeps share() from allocating once a clip exists.
+    // The clips are held weakly as each one references its sprite array, the map key, so
+    // holding them strongly would keep every entry forever.
+    private static final WeakHashMap<BufferedImage[], ArrayList<WeakReference<AnimationClip>>>
+        shared = new WeakHashMap<BufferedImage[], ArrayList<WeakReference<AnimationClip>>>();
+
+    private final String NAME;
+    private final BufferedImage[] SPRITES;
+    private final int START_INDEX;
+    private final int FRAMES;
+    private final int SPACER_FRAMES;
+    private final int INITIAL_DELAY_FRAMES;
+    private final long FRAME_NANOS;
+    private final long INITIAL_DELAY_NANOS;
+    private final boolean LOOP;
+
+    /**
+     * Creates a clip of a range of sprites.
+     * @param NAME The name of the clip
+     * @param SPRITES The sprites, which must not be modified afterwards
+     * @param START_INDEX The first index of SPRITES to use (inclusive)
+     * @param END_INDEX The last index of SPRITES to use (exclusive)
+     * @param SPACER_FRAMES The number of ticks to show each sprite for after its first
+     * @param INITIAL_DELAY_FRAMES The number of ticks to show the first sprite before starting
+     * @param LOOP If the clip loops continuously or stops on its last sprite
+     * @throws IndexOutOfBoundsException if indexes are out of bounds or the range is empty
+     */
+    public AnimationClip(final String NAME, BufferedImage[] SPRITES, final int START_INDEX,
+        final int END_INDEX, final int SPACER_FRAMES, final int INITIAL_DELAY_FRAMES,
+        final boolean LOOP) {
+        this(NAME, SPRITES, START_INDEX, END_INDEX, SPACER_FRAMES, INITIAL_DELAY_FRAMES, 0, 0,
+            LOOP);
+    }
+
+    private AnimationClip(final String NAME, BufferedImage[] SPRITES, final int START_INDEX,
+        final int END_INDEX, final int SPACER_FRAMES, final int INITIAL_DELAY_FRAMES,
+        final long FRAME_NANOS, final long INITIAL_DELAY_NANOS, final boolean LOOP) {
+        if (START_INDEX < 0 || START_INDEX > SPRITES.length || END_INDEX < 0
+            || END_INDEX > SPRITES.length || START_INDEX >= END_INDEX)
+            throw new IndexOutOfBoundsException("Start index: " + START_INDEX + " or End index "
+                + END_INDEX + " Out of range of 0 - " + SPRITES.length);
+        this.NAME = NAME;
+        this.SPRITES = SPRITES;
+        this.START_INDEX = START_INDEX;
+        this.FRAMES = END_INDEX - START_INDEX;
+        this.SPACER_FRAMES = SPACER_FRAMES;
+        this.INITIAL_DELAY_FRAMES = INITIAL_DELAY_FRAMES;
+        this.FRAME_NANOS = FRAME_NANOS;
+        this.INITIAL_DELAY_NANOS = INITIAL_DELAY_NANOS;
+        this.LOOP = LOOP;
+    }
+
+    /**
+     * Creates a timed clip of a range of sprites.
+     * @param NAME The name of the clip
+     * @param SPRITES The sprites, which must not be modified afterwards
+     * @param START_INDEX The first index of SPRITES to use (inclusive)
+     * @param END_INDEX The last index of SPRITES to use (exclusive)
+     * @param FRAME_MILLIS How long each sprite is shown for
+     * @param INITIAL_DELAY_MILLIS How long the first sprite is shown before starting
+     * @param LOOP If the clip loops continuously or stops on its last sprite
+     * @return The clip
+     * @throws IndexOutOfBoundsException if indexes are out of bounds or the range is empty
+     * @throws IllegalArgumentException if FRAME_MILLIS is not positive or the delay is negative
+     */
+    public static AnimationClip timed(final String NAME, BufferedImage[] SPRITES,
+        final int START_INDEX, final int END_INDEX, final double FRAME_MILLIS,
+        final double INITIAL_DELAY_MILLIS, final boolean LOOP) {
+        checkTimes(FRAME_MILLIS, INITIAL_DELAY_MILLIS);
+        return new AnimationClip(NAME, SPRITES, START_INDEX, END_INDEX, 0, 0,
+            toNanos(FRAME_MILLIS), Math.round(INITIAL_DELAY_MILLIS * 1e6), LOOP);
+    }
+
+    /**
+     * @throws IllegalArgumentException if FRAME_MILLIS is not positive or the delay is negative
+     */
+    private static void checkTimes(final double FRAME_MILLIS, final double INITIAL_DELAY_MILLIS) {
+        if (!(FRAME_MILLIS > 0) || !(INITIAL_DELAY_MILLIS >= 0))
+            throw new IllegalArgumentException("Invalid frame time: " + FRAME_MILLIS
+                + " or initial delay: " + INITIAL_DELAY_MILLIS);
+    }
+
+    /**
+     * Converts a frame time to nanoseconds, at least one so the clip stays timed.
+     */
+    private static long toNanos(final double FRAME_MILLIS) {
+        return Math.max(1, Math.round(FRAME_MILLIS * 1e6));
+    }
+
+    /**
+     * Returns the shared clip of a range of sprites, creating it the first time it is asked
+     * for. The parameters are as in the constructor.
+     * @return The shared clip
+     * @throws IndexOutOfBoundsException if indexes are out of bounds or the range is empty
+     */
+    public static AnimationClip share(final String NAME, BufferedImage[] SPRITES,
+        final int START_INDEX, final int END_INDEX, final int SPACER_FRAMES,
+        final int INITIAL_DELAY_FRAMES, final boolean LOOP) {
+        return share(NAME, SPRITES, START_INDEX, END_INDEX, SPACER_FRAMES, INITIAL_DELAY_FRAMES,
+            0, 0, LOOP);
+    }
+
+    /**
+     * Returns the shared timed clip of a range of sprites, creating it the first time it is
+     * asked for. The parameters are as in timed().
+     * @return The shared clip
+     * @throws IndexOutOfBoundsException if indexes are out of bounds or the range is empty
+     * @throws IllegalArgumentException if FRAME_MILLIS is not positive or the delay is negative
+     */
+    public static AnimationClip shareTimed(final String NAME, BufferedImage[] SPRITES,
+        final int START_INDEX, final int END_INDEX, final double FRAME_MILLIS,
+        final double INITIAL_DELAY_MILLIS, final boolean LOOP) {
+        checkTimes(FRAME_MILLIS, INITIAL_DELAY_MILLIS);
+        return share(NAME, SPRITES, START_INDEX, END_INDEX, 0, 0, toNanos(FRAME_MILLIS),
+            Math.round(INITIAL_DELAY_MILLIS * 1e6), LOOP);
+    }
+
+    /**
+     * Returns the shared clip with the given parameters, creating it if there is none.
+     */
+    private static AnimationClip share(final String NAME, BufferedImage[] SPRITES,
+        final int START_INDEX, final int END_INDEX, final int SPACER_FRAMES,
+        final int INITIAL_DELAY_FRAMES, final long FRAME_NANOS, final long INITIAL_DELAY_NANOS,
+        final boolean LOOP) {
+        synchronized (shared) {
+            ArrayList<WeakReference<AnimationClip>> clips = shared.get(SPRITES);
+            if (clips == null) {
+                clips = new ArrayList<WeakReference<AnimationClip>>();
+                shared.put(SPRITES, clips);
+            }
+            for (int i = clips.size() - 1; i >= 0; i--) {
+                AnimationClip clip = clips.get(i).get();
+                if (clip == null)
+                    clips.remove(i); // No longer played by anything
+                else if (clip.START_INDEX == START_INDEX && clip.FRAMES == END_INDEX - START_INDEX
+                    && clip.SPACER_FRAMES == SPACER_FRAMES
+                    && clip.INITIAL_DELAY_FRAMES == INITIAL_DELAY_FRAMES
+                    && clip.FRAME_NANOS == FRAME_NANOS
+                    && clip.INITIAL_DELAY_NANOS == INITIAL_DELAY_NANOS && clip.LOOP == LOOP
+                    && clip.NAME.equals(NAME))
+                    return clip;
+            }
+            AnimationClip clip = new AnimationClip(NAME, SPRITES, START_INDEX, END_INDEX,
+                SPACER_FRAMES, INITIAL_DELAY_FRAMES, FRAME_NANOS, INITIAL_DELAY_NANOS, LOOP);
+            clips.add(new WeakReference<AnimationClip>(clip));
+            return clip;
+        }
+    }
+
+    /**
+     * Returns the sprite of a frame of this clip.
+     * @param FRAME The frame, from 0 to getFrameCount() - 1
+     * @return The sprite of the frame
+     */
+    public BufferedImage getFrame(final int FRAME) {
+        return SPRITES[START_INDEX + FRAME];
+    }
+
+    /**
+     * Returns the index of the frame a timed clip shows at a time.
+     * @param START_NANOS The System.nanoTime() the clip started playing at, or FINISHED
+     * @param NANO_TIME The System.nanoTime() to evaluate the clip at
+     * @return The frame, from 0 to getFrameCount() - 1, 0 for a clip timed in ticks
+     */
+    public int getFrameIndexAt(final long START_NANOS, final long NANO_TIME) {
+        if (START_NANOS == FINISHED)
+            return FRAMES - 1;
+        long elapsed = NANO_TIME - START_NANOS - INITIAL_DELAY_NANOS;
+        if (!isTimed() || elapsed < 0)
+            return 0;
+        long index = elapsed / FRAME_NANOS;
+        if (LOOP)
+            return (int) (index % FRAMES);
+        return (int) Math.min(index, FRAMES - 1);
+    }
+
+    /**
+     * Returns the sprite a timed clip shows at a time.
+     * @param START_NANOS The System.nanoTime() the clip started playing at, or FINISHED
+     * @param NANO_TIME The System.nanoTime() to evaluate the clip at
+     * @return The sprite of the frame at the time
+     */
+    public BufferedImage getFrameAt(final long START_NANOS, final long NANO_TIME) {
+        return SPRITES[START_INDEX + getFrameIndexAt(START_NANOS, NANO_TIME)];
+    }
+
+    /**
+     * Returns when a timed clip next changes frame after a time.
+     * @param START_NANOS The System.nanoTime() the clip started playing at, or FINISHED
+     * @param NANO_TIME The System.nanoTime() to look from
+     * @return The System.nanoTime() of the next change, or Long.MAX_VALUE if the clip does not
+     * change again
+     */
+    public long getNextFrameNanos(final long START_NANOS, final long NANO_TIME) {
+        if (START_NANOS == FINISHED || !isTimed() || FRAMES == 1)
+            return Long.MAX_VALUE;
+        long elapsed = NANO_TIME - START_NANOS - INITIAL_DELAY_NANOS;
+        long next = elapsed < 0 ? 1 : elapsed / FRAME_NANOS + 1;
+        if (!LOOP && next >= FRAMES)
+            return Long.MAX_VALUE;
+        return START_NANOS + INITIAL_DELAY_NANOS + next * FRAME_NANOS;
+    }
+
+    /**
+     * @return The number of sprites in this clip
+     */
+    public int getFrameCount() {
+        return FRAMES;
+    }
+
+    /**
+     * @return The number of ticks each sprite is shown for after its first
+     */
+    public int getSpacerFrames() {
+        return SPACER_FRAMES;
+    }
+
+    /**
+     * @return The number of ticks the first sprite is shown before the clip starts
+     */
+    public int getInitialDelayFrames() {
+        return INITIAL_DELAY_FRAMES;
+    }
+
+    /**
+     * @return true if the clip is timed in milliseconds, false if it is timed in ticks
+     */
+    public boolean isTimed() {
+        return FRAME_NANOS > 0;
+    }
+
+    /**
+     * @return How long each sprite of a timed clip is shown for, in nanoseconds
+     */
+    public long getFrameNanos() {
+        return FRAME_NANOS;
+    }
+
+    /**
+     * @return How long the first sprite of a timed clip is shown before it starts, in
+     * nanoseconds
+     */
+    public long getInitialDelayNanos() {
+        return INITIAL_DELAY_NANOS;
+    }
+
+    /**
+     * @return true if the clip loops continuously, false if it stops on its last sprite
+     */
+    public boolean isLoop() {
+        return LOOP;
+    }
+
+    /**
+     * @return The name of this clip
+     */
+    public String getName() {
+        return NAME;
+    }
+}
@@ -1,10 +1,62 @@
-import java.util.LinkedList;
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 public class AnimationEngine implements Runnable {
 
-    private boolean running;
-    public LinkedList<AnimatedObject> objects;
+    /**
+     * How the engine waits between ticks.
+     * SPIN polls System.nanoTime() continuously (the original loop) and keeps a core busy.
+     * PARK parks the engine thread until shortly before the next tick and only spins for
+     * the last SPIN_THRESHOLD_NANOS to keep the timing precise.
+     */
+    public enum Scheduler {
+        SPIN, PARK;
+    }
+
+    /**
+     * The amount of time before a tick that the PARK scheduler stops parking and spins.
+     * parkNanos() commonly oversleeps by up to a few hundred microseconds.
+     */
+    private static final long SPIN_THRESHOLD_NANOS = 500000;
+    private static final long NANOS_PER_SECOND = 1000000000;
+    public static final double DEFAULT_TICK_RATE = 60.0;
+    public static final double DEFAULT_IDLE_TICK_RATE = 10.0;
+
+    private volatile boolean running;
+    private final AnimatedObjectRegistry objects;
     private final boolean printFrames;
+    private volatile Scheduler scheduler;
+    private volatile double cpuUsage;
+    private volatile double tickRate;
+    private volatile double renderRate;
+    private volatile Runnable renderer;
+    private volatile double idleTickRate;
+    private volatile boolean idle;
+    private volatile boolean woken;
+    private volatile Thread thread;
+    private boolean ticked;
+    // The earliest event of the objects while idle, Long.MAX_VALUE while ticking normally
+    private long eventNanos = Long.MAX_VALUE;
+    private final SpatialGrid grid = new SpatialGrid();
+    private final PointerSampler pointer = new PointerSampler();
+    // Three snapshots, each held by exactly one of: the engine thread capturing it (back),
+    // the last published one (ready), and the one being painted (front)
+    private RenderSnapshot back = new RenderSnapshot();
+    private RenderSnapshot published = back;
+    private final AtomicReference<RenderSnapshot> ready =
+        new AtomicReference<>(new RenderSnapshot());
+    private RenderSnapshot front = new RenderSnapshot();
+    private long tickCount;
+    private final EngineMetrics metrics = new EngineMetrics();
+    private final MovementSystem movement = new MovementSystem();
+    private final EntityStore entities = new EntityStore(movement);
+    // Replaced rather than modified, like the objects, so ticks iterate it without locking
+    private volatile TickSystem[] systems = {movement, entities};
 
     /**
      * Creates an AnimationEngine. Does not start it. Can be started via the run method
@@ -13,8 +65,12 @@ public class AnimationEngine implements Runnable {
      */
     public AnimationEngine() {
         running = false;
-        objects = new LinkedList<>();
+        objects = new AnimatedObjectRegistry();
         printFrames = false;
+        scheduler = Scheduler.PARK;
+        tickRate = DEFAULT_TICK_RATE;
+        renderRate = DEFAULT_TICK_RATE;
+        idleTickRate = DEFAULT_IDLE_TICK_RATE;
     }
 
     /**
@@ -24,44 +80,223 @@ public class AnimationEngine implements Runnable {
      */
     public AnimationEngine(boolean print) {
         running = false;
+        objects = new AnimatedObjectRegistry();
         printFrames = print;
+        scheduler = Scheduler.PARK;
+        tickRate = DEFAULT_TICK_RATE;
+        renderRate = DEFAULT_TICK_RATE;
+        idleTickRate = DEFAULT_IDLE_TICK_RATE;
     }
 
     /**
      * Starts the Animation timer, going through all animated objects and calling the
-     * animate method on them.
+     * animate method on them at the tick rate. The renderer is run at most at the render
+     * rate, and only if at least one tick happened or a timed animation changed frame since
+     * it last ran.
      */
     @Override
     public void run() {
         running = true;
+        thread = Thread.currentThread();
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        boolean measureCpu = threadBean.isCurrentThreadCpuTimeSupported();
+        long lastTime = System.nanoTime();
+        double tickDelta = 0;
+        double frameDelta = 0;
+        boolean dirty = false;
+        long renderedNanos = System.nanoTime();
+        long timer = System.currentTimeMillis();
+        long cpuTimer = measureCpu ? threadBean.getCurrentThreadCpuTime() : 0;
+        long wallTimer = System.nanoTime();
+        int ticks = 0;
+        int frames = 0;
         while (running) {
-            long lastTime = System.nanoTime();
-            // The number of ticks
-            double amountOfTicks = 60.0;
-            double ns = 1000000000 / amountOfTicks;
-            double delta = 0;
-            long timer = System.currentTimeMillis();
-            int frames = 0;
-            while (running) {
-                long now = System.nanoTime();
-                delta += (now - lastTime) / ns;
-                lastTime = now;
-                while (delta >= 1) {
-                    for (int i = 0; i < objects.size(); i++) {
-                        objects.get(i).animate();
+            // Read every loop so the rates can be changed while running. A suspended engine
+            // has an infinite tick length, so no ticks accumulate until it is woken.
+            double tickNs = NANOS_PER_SECOND / (idle ? idleTickRate : tickRate);
+            double frameNs = NANOS_PER_SECOND / renderRate;
+            long now = System.nanoTime();
+            tickDelta += (now - lastTime) / tickNs;
+            frameDelta += (now - lastTime) / frameNs;
+            lastTime = now;
+            if (woken || idle && now >= eventNanos) {
+                woken = false;
+                if (idle) {
+                    // Tick right away instead of waiting out the rest of an idle tick
+                    idle = false;
+                    tickDelta = Math.max(tickDelta, 1);
+                }
+            }
+            if (tickDelta >= 1)
+                pointer.expire(now);
+            // Frames are only late if one was waiting to be rendered, not after idling
+            boolean framePending = dirty;
+            int loopTicks = 0;
+            while (tickDelta >= 1) {
+                long tickStart = System.nanoTime();
+                tick();
+                metrics.tick(System.nanoTime() - tickStart);
+                loopTicks++;
+                tickDelta--;
+                ticks++;
+                dirty = true;
+                if (tickDelta < 1)
+                    publish();
+            }
+            if (loopTicks > 1)
+                metrics.catchUp(loopTicks - 1);
+            // Timed animations pick their frame when painted, so one changing frame needs a
+            // render even when nothing ticked
+            if (!dirty && now >= published.getNextFrameNanos(renderedNanos))
+                dirty = true;
+            if (frameDelta >= 1) {
+                // Late frames are dropped rather than caught up, there is nothing new to show
+                if (framePending && frameDelta >= 2)
+                    metrics.dropFrames((long) frameDelta - 1);
+                frameDelta -= Math.floor(frameDelta);
+                Runnable renderer = this.renderer;
+                if (dirty) {
+                    if (renderer != null) {
+                        renderer.run();
+                        metrics.frame();
+                        frames++;
                     }
-                    delta--;
+                    renderedNanos = now;
+                    dirty = false;
                 }
-                frames++;
+            }
+
+            if (System.currentTimeMillis() - timer > 1000) {
+                timer += 1000;
+                if (measureCpu) {
+                    long cpuNow = threadBean.getCurrentThreadCpuTime();
+                    long wallNow = System.nanoTime();
+                    cpuUsage = (double) (cpuNow - cpuTimer) / (wallNow - wallTimer);
+                    cpuTimer = cpuNow;
+                    wallTimer = wallNow;
+                }
+                metrics.second(ticks, frames, cpuUsage);
+                if (printFrames)
+                    System.out.println("Ticks: " + ticks + " FPS: " + frames + " CPU: "
+                        + Math.round(cpuUsage * 100) + "% (" + scheduler
+                        + (idle ? ", idle)" : ")"));
+                ticks = 0;
+                frames = 0;
+            }
 
-                if (System.currentTimeMillis() - timer > 1000) {
-                    timer += 1000;
-                    if (printFrames)
-                        System.out.println("FPS: " + frames);
-                    frames = 0;
+            if (scheduler == Scheduler.PARK) {
+                tickNs = NANOS_PER_SECOND / (idle ? idleTickRate : tickRate);
+                // Only wake up for a frame if there is something new to render
+                double frameWait = Double.POSITIVE_INFINITY;
+                if (dirty) {
+                    frameWait = (1 - frameDelta) * frameNs;
+                } else {
+                    long nextFrame = published.getNextFrameNanos(renderedNanos);
+                    if (nextFrame != Long.MAX_VALUE)
+                        frameWait = Math.max(nextFrame - lastTime, 0);
                 }
+                double wait = Math.min((1 - tickDelta) * tickNs, frameWait);
+                if (idle && eventNanos != Long.MAX_VALUE)
+                    wait = Math.min(wait, Math.max(eventNanos - lastTime, 0));
+                if (Double.isInfinite(wait))
+                    suspend();
+                else
+                    waitUntil(lastTime + (long) wait);
             }
         }
+        thread = null;
+    }
+
+    /**
+     * Returns the earliest time an object has to be ticked at.
+     * @param current The objects of this tick
+     * @return The System.nanoTime() of the earliest event, or Long.MAX_VALUE if there is none
+     */
+    private long getNextEventNanos(AnimatedObject[] current) {
+        long next = Long.MAX_VALUE;
+        for (int i = 0; i < current.length; i++) {
+            next = Math.min(next, current[i].getNextEventNanos());
+        }
+        return next;
+    }
+
+    /**
+     * Returns if every object reports that it is quiescent.
+     * @param current The objects of this tick
+     * @return true if all objects are quiescent or there are none, false otherwise
+     */
+    private boolean isQuiescent(AnimatedObject[] current) {
+        for (int i = 0; i < current.length; i++) {
+            if (!current[i].isQuiescent())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Applies queued additions and removals, ticks the TickSystems and animates every object
+     * once.
+     */
+    void tick() {
+        objects.update();
+        AnimatedObject[] current = objects.getObjects();
+        // The length of this tick, which the last tick chose by being idle or not
+        float seconds = (float) (1 / (idle ? idleTickRate : tickRate));
+        TickSystem[] systems = this.systems;
+        for (int i = 0; i < systems.length; i++) {
+            systems[i].tick(seconds);
+        }
+        for (int i = 0; i < current.length; i++) {
+            current[i].animate();
+        }
+        tickCount++;
+        idle = isQuiescent(current) && entities.isQuiescent();
+        eventNanos = idle ? getNextEventNanos(current) : Long.MAX_VALUE;
+        if (!ticked && current.length > 0) {
+            ticked = true;
+            StartupTrace.mark(StartupTrace.FIRST_TICK);
+        }
+    }
+
+    /**
+     * Captures the objects and entities into a RenderSnapshot and publishes it in place of
+     * the last one, then rebuilds the SpatialGrid from it. Run after the last tick of a loop,
+     * catch-up ticks are never shown.
+     */
+    void publish() {
+        AnimatedObject[] current = objects.getObjects();
+        back.capture(current, entities, tickCount);
+        // The entities follow the objects in the snapshot and are not hit tested
+        grid.rebuild(back, current.length);
+        published = back;
+        back = ready.getAndSet(back);
+    }
+
+    /**
+     * Parks the current thread until the engine is woken or stopped.
+     * @see #wake()
+     */
+    private void suspend() {
+        while (running && !woken) {
+            LockSupport.park(this);
+        }
+    }
+
+    /**
+     * Parks the current thread until SPIN_THRESHOLD_NANOS before the deadline, then spins
+     * until the deadline is reached. Returns early if the engine is stopped or woken.
+     * @param deadline The System.nanoTime() value to wait for
+     */
+    private void waitUntil(final long deadline) {
+        long remaining = deadline - System.nanoTime();
+        // parkNanos may return spuriously, so keep parking until close enough to spin
+        while (running && !woken && remaining > SPIN_THRESHOLD_NANOS) {
+            LockSupport.parkNanos(this, remaining - SPIN_THRESHOLD_NANOS);
+            remaining = deadline - System.nanoTime();
+        }
+        while (running && !woken && System.nanoTime() - deadline < 0) {
+            Thread.onSpinWait();
+        }
     }
 
     /**
@@ -69,10 +304,149 @@ public class AnimationEngine implements Runnable {
      */
     public void stop() {
         running = false;
+        Thread thread = this.thread;
+        if (thread != null)
+            LockSupport.unpark(thread);
+    }
+
+    /**
+     * Brings an idle engine back to the full tick rate and ticks right away. Safe to call
+     * from any thread, for example from input listeners on the EDT. The engine goes idle
+     * again once all objects report being quiescent after a tick.
+     * @see AnimatedObject#isQuiescent()
+     */
+    public void wake() {
+        woken = true;
+        Thread thread = this.thread;
+        if (thread != null)
+            LockSupport.unpark(thread);
+    }
+
+    /**
+     * Sets the tick rate used while every object is quiescent. A rate of zero suspends the
+     * engine until wake() is called or the next event of an object is due (see
+     * AnimatedObject#getNextEventNanos()). Can be changed while the engine is running.
+     * @param ticksPerSecond The idle tick rate, DEFAULT_IDLE_TICK_RATE by default
+     * @throws IllegalArgumentException if ticksPerSecond is negative
+     */
+    public void setIdleTickRate(double ticksPerSecond) {
+        if (!(ticksPerSecond >= 0))
+            throw new IllegalArgumentException(
+                "Idle tick rate cannot be negative: " + ticksPerSecond);
+        idleTickRate = ticksPerSecond;
+    }
+
+    /**
+     * Returns the tick rate used while every object is quiescent.
+     * @return The idle tick rate, where zero means the engine is suspended until woken
+     */
+    public double getIdleTickRate() {
+        return idleTickRate;
+    }
+
+    /**
+     * Returns if the engine is idle, that is if every object was quiescent after the last tick.
+     * @return true if the engine is ticking at the idle tick rate, false otherwise
+     */
+    public boolean isIdle() {
+        return idle;
+    }
+
+    /**
+     * Sets how the engine waits between ticks. Can be changed while the engine is running.
+     * @param scheduler The Scheduler to use, PARK by default
+     */
+    public void setScheduler(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Returns how the engine waits between ticks.
+     * @return The current Scheduler
+     */
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Sets the number of simulation ticks per second, where each tick calls animate() on
+     * every object once. Can be changed while the engine is running.
+     * @param ticksPerSecond The tick rate, DEFAULT_TICK_RATE by default
+     * @throws IllegalArgumentException if ticksPerSecond is not positive
+     */
+    public void setTickRate(double ticksPerSecond) {
+        if (!(ticksPerSecond > 0))
+            throw new IllegalArgumentException("Tick rate must be positive: " + ticksPerSecond);
+        tickRate = ticksPerSecond;
+    }
+
+    /**
+     * Returns the number of simulation ticks per second.
+     * @return The tick rate
+     */
+    public double getTickRate() {
+        return tickRate;
     }
 
     /**
-     * Adds an object to be animated
+     * Sets the maximum number of times per second the renderer is run. Rendering is skipped
+     * when no tick happened since the last render, so a render rate above the tick rate
+     * renders at the tick rate. Can be changed while the engine is running.
+     * @param framesPerSecond The render rate, DEFAULT_TICK_RATE by default
+     * @throws IllegalArgumentException if framesPerSecond is not positive
+     * @see #getDisplayRefreshRate()
+     */
+    public void setRenderRate(double framesPerSecond) {
+        if (!(framesPerSecond > 0))
+            throw new IllegalArgumentException("Render rate must be positive: " + framesPerSecond);
+        renderRate = framesPerSecond;
+    }
+
+    /**
+     * Returns the maximum number of times per second the renderer is run.
+     * @return The render rate
+     */
+    public double getRenderRate() {
+        return renderRate;
+    }
+
+    /**
+     * Sets the renderer that is run on the engine thread after ticks have advanced the
+     * objects, for example one that requests a single repaint of the whole scene. This
+     * replaces objects repainting themselves every tick.
+     * @param renderer The renderer, or null to not render
+     */
+    public void setRenderer(Runnable renderer) {
+        this.renderer = renderer;
+    }
+
+    /**
+     * Returns the refresh rate of the default screen, useful as a render rate.
+     * @return The refresh rate in hertz, or DEFAULT_TICK_RATE if it is unknown
+     * @see DisplayMode#getRefreshRate()
+     */
+    public static double getDisplayRefreshRate() {
+        if (GraphicsEnvironment.isHeadless())
+            return DEFAULT_TICK_RATE;
+        int refreshRate = GraphicsEnvironment.getLocalGraphicsEnvironment()
+            .getDefaultScreenDevice().getDisplayMode().getRefreshRate();
+        if (refreshRate == DisplayMode.REFRESH_RATE_UNKNOWN)
+            return DEFAULT_TICK_RATE;
+        return refreshRate;
+    }
+
+    /**
+     * Returns the CPU time used by the engine thread over the last measured second as a
+     * fraction of one core (1.0 means a core was fully busy). Updated about once a second.
+     * @return The fraction of a core used, or 0 if thread CPU time is not supported
+     * @see ThreadMXBean#getCurrentThreadCpuTime()
+     */
+    public double getCpuUsage() {
+        return cpuUsage;
+    }
+
+    /**
+     * Adds an object to be animated, starting from the next tick. Safe to call from any thread.
      * @param object The AnimatedObject to animate
      */
     public void add(AnimatedObject object) {
@@ -80,7 +454,8 @@ public class AnimationEngine implements Runnable {
     }
 
     /**
-     * Removes an object from the AnimationEngine
+     * Removes an object from the AnimationEngine, starting from the next tick. Safe to call
+     * from any thread.
      * @param object The AnimatedObject to remove
      */
     public void remove(AnimatedObject object) {
@@ -88,13 +463,109 @@ public class AnimationEngine implements Runnable {
     }
 
     /**
-     * Removes an object from the AnimationEngine
-     * @param index The index to remove an object from
+     * Removes an object from the AnimationEngine, starting from the next tick.
+     * @param index The index in getObjects() to remove an object from
      */
     public void remove(int index) {
         objects.remove(index);
     }
 
+    /**
+     * Returns the topmost object at a point, as of the last published tick. Safe to call from
+     * any thread.
+     * @param x The x coordinate of the point
+     * @param y The y coordinate of the point
+     * @return The object, or null if there is none at the point
+     */
+    public AnimatedObject getObjectAt(int x, int y) {
+        return grid.getObjectAt(x, y);
+    }
+
+    /**
+     * Returns the pointer location shared by the objects, sampled at most once per loop.
+     * @return The PointerSampler of this engine
+     */
+    public PointerSampler getPointer() {
+        return pointer;
+    }
+
+    /**
+     * Adds a TickSystem that is ticked every tick before the objects are animated, after the
+     * systems added before it. Can be called while the engine is running.
+     * @param system The system to add
+     */
+    public synchronized void addSystem(TickSystem system) {
+        TickSystem[] added = Arrays.copyOf(systems, systems.length + 1);
+        added[systems.length] = system;
+        systems = added;
+    }
+
+    /**
+     * Returns the MovementSystem that moves the objects and entities of this engine, which is
+     * the first TickSystem ticked.
+     * @return The MovementSystem of this engine
+     */
+    public MovementSystem getMovement() {
+        return movement;
+    }
+
+    /**
+     * Returns the EntityStore of this engine, which is ticked after the MovementSystem and
+     * drawn after the objects. Entities are not hit tested by getObjectAt().
+     * @return The EntityStore of this engine
+     */
+    public EntityStore getEntities() {
+        return entities;
+    }
+
+    /**
+     * Returns the pacing metrics of this engine, which can be registered as an MBean.
+     * @return The EngineMetrics of this engine
+     */
+    public EngineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the SpatialGrid of the objects' bounds, rebuilt from every published tick.
+     * @return The grid of this engine
+     */
+    public SpatialGrid getSpatialGrid() {
+        return grid;
+    }
+
+    /**
+     * Returns the snapshot of the latest tick for the thread that paints it, without
+     * locking. The snapshot is not written to until this is called again, so it may be read
+     * for as long as needed, but only one thread (the EDT) may call this.
+     * @return The latest RenderSnapshot, empty before the first tick
+     */
+    public RenderSnapshot getRenderSnapshot() {
+        if (ready.get().getTick() > front.getTick())
+            front = ready.getAndSet(front);
+        return front;
+    }
+
+    /**
+     * Returns the snapshot published by the last tick, for the engine thread itself (such as
+     * the renderer, which runs between ticks). Other threads use getRenderSnapshot().
+     * @return The RenderSnapshot of the last tick
+     */
+    public RenderSnapshot getTickSnapshot() {
+        return published;
+    }
+
+    /**
+     * Returns the objects animated in the current tick. The array is replaced rather than
+     * modified when objects are added or removed, so it can be iterated from any thread.
+     * It must not be modified.
+     * @return The currently animated objects
+     * @see AnimatedObjectRegistry#getObjects()
+     */
+    public AnimatedObject[] getObjects() {
+        return objects.getObjects();
+    }
+
     /**
      * Returns if the AnimationEngine is currently looping
      * @return true if the engine is looping, false otherwise
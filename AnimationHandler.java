@@ -4,13 +4,23 @@ import java.util.Hashtable;
 import java.util.NoSuchElementException;
 
 /**
- * Handler Object for Animations. Provides a Hashtable that maps Strings to Animations.
+ * Handler Object for Animations. Each added Animation is given an integer handle, an index
+ * into an array of the Animations, which is the fast way to reach it every tick. A Hashtable
+ * maps the names of the Animations to their handles for the String methods, which are kept
+ * for compatibility and cost a synchronized lookup per call.
+ * 
+ * The handle methods are not synchronized, so an AnimationHandler should only be used by
+ * one thread at a time (usually the AnimationEngine's).
  * @author youngAgFox
  *
  */
 public class AnimationHandler {
 
-    private Hashtable<String, Animation> animations;
+    private static final int DEFAULT_HANDLES = 16;
+
+    private Hashtable<String, Integer> animations;
+    private Animation[] handles;
+    private int handleCount;
 
     /**
      * Constructs a default AnimationHandler with a Hashtable that has capacity
@@ -18,7 +28,8 @@ public class AnimationHandler {
      * @see Hashtable
      */
     public AnimationHandler() {
-        animations = new Hashtable<String, Animation>();
+        animations = new Hashtable<String, Integer>();
+        handles = new Animation[DEFAULT_HANDLES];
     }
 
     /**
@@ -28,15 +39,41 @@ public class AnimationHandler {
      * @see Hashtable
      */
     public AnimationHandler(final int CAPACITY, final int LOAD_FACTOR) {
-        animations = new Hashtable<String, Animation>(CAPACITY, LOAD_FACTOR);
+        animations = new Hashtable<String, Integer>(CAPACITY, LOAD_FACTOR);
+        handles = new Animation[Math.max(CAPACITY, 1)];
     }
 
     /**
-     * Adds an animation to the Hashtable
+     * Adds an animation to the Hashtable. An animation with the same name is replaced, and
+     * keeps its handle.
      * @param animation
+     * @return The handle of the animation
+     */
+    public int add(Animation animation) {
+        synchronized (animations) {
+            Integer handle = animations.get(animation.getName());
+            if (handle == null) {
+                if (handleCount == handles.length)
+                    handles = Arrays.copyOf(handles, handleCount * 2);
+                handle = handleCount++;
+                animations.put(animation.getName(), handle);
+            }
+            handles[handle] = animation;
+            return handle;
+        }
+    }
+
+    /**
+     * Returns the handle of the animation of the given name
+     * @param ANIMATION_NAME the Animation name
+     * @return The handle of the animation
+     * @throws NoSuchElementException if the key does not exist
      */
-    public void add(Animation animation) {
-        animations.put(animation.getName(), animation);
+    public int getHandle(String ANIMATION_NAME) {
+        Integer handle = animations.get(ANIMATION_NAME);
+        if (handle == null)
+            noKeyException(ANIMATION_NAME);
+        return handle;
     }
 
     /**
@@ -45,20 +82,35 @@ public class AnimationHandler {
      * @return animation that matches the key
      */
     public Animation get(String ANIMATION_NAME) {
-        Animation animation = animations.get(ANIMATION_NAME);
+        return handles[getHandle(ANIMATION_NAME)];
+    }
+
+    /**
+     * Returns the animation of a handle
+     * @param HANDLE The handle returned when the animation was added
+     * @return The animation of the handle
+     * @throws NoSuchElementException if the handle is not of an added animation
+     */
+    public Animation get(final int HANDLE) {
+        Animation animation = HANDLE >= 0 && HANDLE < handleCount ? handles[HANDLE] : null;
         if (animation == null)
-            noKeyException(ANIMATION_NAME);
+            throw new NoSuchElementException("The handle: " + HANDLE
+                + " is not of an animation in the current table.");
         return animation;
     }
 
     /**
-     * Removes the animation using the provided key.
+     * Removes the animation using the provided key. Its handle is not reused.
      * @param ANIMATION_NAME the name of the Animation
      * @throws NoSuchElementException if the key did not exist
      */
     public void remove(String ANIMATION_NAME) {
-        if (animations.remove(ANIMATION_NAME) == null)
-            noKeyException(ANIMATION_NAME);
+        synchronized (animations) {
+            Integer handle = animations.remove(ANIMATION_NAME);
+            if (handle == null)
+                noKeyException(ANIMATION_NAME);
+            handles[handle] = null;
+        }
     }
 
     /**
@@ -96,39 +148,75 @@ public class AnimationHandler {
      * @throws NoSuchElementException if the key does not exist
      */
     public BufferedImage getAnimatedImage(String ANIMATION_NAME) {
-        BufferedImage image = animations.get(ANIMATION_NAME).getAnimatedImage();
-        if (image == null)
-            noKeyException(ANIMATION_NAME);
-        return image;
+        return get(ANIMATION_NAME).getAnimatedImage();
+    }
+
+    /**
+     * Resets the animation of a handle.
+     * @param HANDLE the Animation handle
+     * @throws NoSuchElementException if the handle is not of an added animation
+     */
+    public void reset(final int HANDLE) {
+        get(HANDLE).reset();
+    }
+
+    /**
+     * Returns if the animation of a handle is done playing
+     * @param HANDLE the Animation handle
+     * @throws NoSuchElementException if the handle is not of an added animation
+     * @see Animation#isDone()
+     */
+    public boolean isDone(final int HANDLE) {
+        return get(HANDLE).isDone();
+    }
+
+    /**
+     * Sets the done attribute of the animation of a handle to true
+     * @param HANDLE the Animation handle
+     * @throws NoSuchElementException if the handle is not of an added animation
+     */
+    public void setDone(final int HANDLE) {
+        get(HANDLE).setDone(true);
+    }
+
+    /**
+     * Returns the animated image of the animation of a handle.
+     * @param HANDLE the Animation handle
+     * @return the animated image
+     * @throws NoSuchElementException if the handle is not of an added animation
+     */
+    public BufferedImage getAnimatedImage(final int HANDLE) {
+        return get(HANDLE).getAnimatedImage();
     }
 
     /**
      * Creates and adds a new Animation to the Hashtable
      * @param ANIMATION_NAME the Animation name
      * @param SPRITES the Animation sprites
+     * @return The handle of the animation
      */
-    public void create(final String ANIMATION_NAME, BufferedImage[] SPRITES) {
+    public int create(final String ANIMATION_NAME, BufferedImage[] SPRITES) {
         Animation animation = new Animation(ANIMATION_NAME, SPRITES);
-        add(animation);
+        return add(animation);
     }
 
     /**
      * Creates and adds a new Animation to the Hashtable that uses the range of values
-     * in Sprites as specified.
+     * in Sprites as specified. The sprites are not copied, the Animation plays the shared
+     * AnimationClip of the range.
      * @param ANIMATION_NAME the Animation name
      * @param SPRITES the Animation sprites
      * @param START_INDEX The starting index of SPRITES to use (inclusive).
      * @param END_INDEX The last index of SPRITES to use (exclusive).
+     * @return The handle of the animation
      * @throws IndexOutOfBoundsException if indexes are out of bounds
-     * @see Arrays#copyOfRange(Object, int, int)
+     * @see AnimationClip#share(String, BufferedImage[], int, int, int, int, boolean)
      */
-    public void create(final String ANIMATION_NAME, BufferedImage[] SPRITES, final int START_INDEX,
+    public int create(final String ANIMATION_NAME, BufferedImage[] SPRITES, final int START_INDEX,
         final int END_INDEX) {
-        if (START_INDEX < 0 || START_INDEX > SPRITES.length || END_INDEX < 0
-            || END_INDEX > SPRITES.length)
-            throw new IndexOutOfBoundsException("Start index: " + START_INDEX + " or End index "
-                + END_INDEX + " Out of range of 0 - " + SPRITES.length);
-        create(ANIMATION_NAME, Arrays.copyOfRange(SPRITES, START_INDEX, END_INDEX));
+        return create(ANIMATION_NAME, SPRITES, START_INDEX, END_INDEX,
+            Animation.DEFAULT_SPACER_FRAMES, Animation.DEFAULT_INITIAL_DELAY_FRAMES,
+            Animation.DEFAULT_LOOP);
     }
 
     /**
@@ -138,17 +226,19 @@ public class AnimationHandler {
      * @param SPACER_FRAMES The number of frames to pad the visible frames with
      * @param INITIAL_DELAY_FRAMES The number of delay frames to tick before animation begins
      * @param LOOP If this animation loops continuously or not
+     * @return The handle of the animation
      */
-    public void create(final String ANIMATION_NAME, BufferedImage[] SPRITES,
+    public int create(final String ANIMATION_NAME, BufferedImage[] SPRITES,
         final int SPACER_FRAMES, final int INITIAL_DELAY_FRAMES, final boolean LOOP) {
         Animation animation =
             new Animation(ANIMATION_NAME, SPRITES, SPACER_FRAMES, INITIAL_DELAY_FRAMES, LOOP);
-        add(animation);
+        return add(animation);
     }
 
     /**
      * Creates and adds a new Animation to the Hashtable with parameters to specify
-     * the range of the Array to use.
+     * the range of the Array to use. The sprites are not copied, the Animation plays the
+     * shared AnimationClip of the range.
      * @param ANIMATION_NAME The name of the animation
      * @param SPRITES The original array of sprites
      * @param START_INDEX The first index to use (inclusive)
@@ -156,18 +246,47 @@ public class AnimationHandler {
      * @param SPACER_FRAMES The number of spacer frames
      * @param INITIAL_DELAY_FRAMES The number of initial delay frames
      * @param LOOP Whether or not this animation continually loops
+     * @return The handle of the animation
      * @throws IndexOutOfBoundsException if indexes are out of bounds
-     * @see Arrays#copyOfRange(Object, int, int)
+     * @see AnimationClip#share(String, BufferedImage[], int, int, int, int, boolean)
      */
-    public void create(final String ANIMATION_NAME, BufferedImage[] SPRITES, final int START_INDEX,
+    public int create(final String ANIMATION_NAME, BufferedImage[] SPRITES, final int START_INDEX,
         final int END_INDEX, final int SPACER_FRAMES, final int INITIAL_DELAY_FRAMES,
         final boolean LOOP) {
-        if (START_INDEX < 0 || START_INDEX > SPRITES.length || END_INDEX < 0
-            || END_INDEX > SPRITES.length)
-            throw new IndexOutOfBoundsException("Start index: " + START_INDEX + " or End index "
-                + END_INDEX + " Out of range of 0 - " + SPRITES.length);
-        create(ANIMATION_NAME, Arrays.copyOfRange(SPRITES, START_INDEX, END_INDEX), SPACER_FRAMES,
-            INITIAL_DELAY_FRAMES, LOOP);
+        return create(AnimationClip.share(ANIMATION_NAME, SPRITES, START_INDEX, END_INDEX,
+            SPACER_FRAMES, INITIAL_DELAY_FRAMES, LOOP));
+    }
+
+    /**
+     * Creates and adds a new Animation to the Hashtable that plays a range of the sprites
+     * timed in milliseconds, at the same speed whatever the tick rate. The sprites are not
+     * copied, the Animation plays the shared AnimationClip of the range.
+     * @param ANIMATION_NAME The name of the animation
+     * @param SPRITES The original array of sprites
+     * @param START_INDEX The first index to use (inclusive)
+     * @param END_INDEX The last index to use (exclusive)
+     * @param FRAME_MILLIS How long each sprite is shown for
+     * @param INITIAL_DELAY_MILLIS How long the first sprite is shown before starting
+     * @param LOOP Whether or not this animation continually loops
+     * @return The handle of the animation
+     * @throws IndexOutOfBoundsException if indexes are out of bounds
+     * @throws IllegalArgumentException if FRAME_MILLIS is not positive or the delay is negative
+     * @see AnimationClip#shareTimed(String, BufferedImage[], int, int, double, double, boolean)
+     */
+    public int createTimed(final String ANIMATION_NAME, BufferedImage[] SPRITES,
+        final int START_INDEX, final int END_INDEX, final double FRAME_MILLIS,
+        final double INITIAL_DELAY_MILLIS, final boolean LOOP) {
+        return create(AnimationClip.shareTimed(ANIMATION_NAME, SPRITES, START_INDEX, END_INDEX,
+            FRAME_MILLIS, INITIAL_DELAY_MILLIS, LOOP));
+    }
+
+    /**
+     * Creates and adds a new Animation playing a clip to the Hashtable
+     * @param CLIP The clip to play, named as the Animation
+     * @return The handle of the animation
+     */
+    public int create(final AnimationClip CLIP) {
+        return add(new Animation(CLIP));
     }
 
     /**
@@ -0,0 +1,438 @@
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Micro benchmarks of the animation, audio and resource hot paths, measured the way JMH's
+ * average time mode does: each benchmark is warmed up for WARMUP_ITERATIONS, then timed for
+ * MEASURED_ITERATIONS of ITERATION_MILLIS each, and the mean time per operation is printed
+ * with its 99.9% confidence error. Results are consumed into a sink so the JIT cannot remove
+ * the measured work.
+ * 
+ * Run with "java BenchmarkSuite [filter]", where only benchmarks whose name contains the
+ * filter are run.
+ */
+public class BenchmarkSuite {
+
+    public static final int WARMUP_ITERATIONS = 5;
+    public static final int MEASURED_ITERATIONS = 5;
+    public static final int ITERATION_MILLIS = 200;
+
+    private static final double Z_999 = 3.291;
+
+    private static Object sink;
+
+    /**
+     * One operation of a benchmark.
+     */
+    private interface Benchmark {
+        /**
+         * Runs the operation once.
+         * @return A result of the operation, consumed by the suite
+         */
+        Object run();
+    }
+
+    private final String filter;
+    private final ArrayList<File> temporary;
+
+    private BenchmarkSuite(String filter) {
+        this.filter = filter;
+        temporary = new ArrayList<File>();
+    }
+
+    public static void main(String[] args) throws IOException {
+        BenchmarkSuite suite = new BenchmarkSuite(args.length > 0 ? args[0] : "");
+        System.out.println(String.format(Locale.ROOT, "%-48s %4s %14s %13s  %s", "Benchmark",
+            "Cnt", "Score", "Error", "Units"));
+        try {
+            suite.runAll();
+        } finally {
+            suite.deleteTemporary();
+        }
+    }
+
+    private void runAll() throws IOException {
+        BufferedImage[] sprites = createSprites(40, 32);
+
+        // Animation
+        Animation animation = new Animation("WALK", java.util.Arrays.copyOf(sprites, 4));
+        run("Animation.getAnimatedImage ticks", animation::getAnimatedImage);
+        Animation timed = new Animation(AnimationClip.timed("WALK", sprites, 0, 4, 83.3, 0, true));
+        run("Animation.getAnimatedImage timed", timed::getAnimatedImage);
+
+        AnimationHandler handler = new AnimationHandler();
+        final String[] NAMES = {"WALK_DOWN", "WALK_RIGHT", "WALK_UP", "WALK_LEFT", "SIT_DOWN",
+            "SIT_RIGHT", "SIT_LEFT", "SIT_WAG", "SLEEP", "RUN_RIGHT", "RUN_LEFT"};
+        for (int i = 0; i < NAMES.length; i++) {
+            handler.create(NAMES[i], sprites, i * 3, i * 3 + 3);
+        }
+        int[] next = new int[1];
+        run("AnimationHandler.getAnimatedImage name", () -> {
+            next[0] = next[0] == NAMES.length - 1 ? 0 : next[0] + 1;
+            return handler.getAnimatedImage(NAMES[next[0]]);
+        });
+        int[] handles = new int[NAMES.length];
+        for (int i = 0; i < NAMES.length; i++) {
+            handles[i] = handler.getHandle(NAMES[i]);
+        }
+        run("AnimationHandler.getAnimatedImage handle", () -> {
+            next[0] = next[0] == NAMES.length - 1 ? 0 : next[0] + 1;
+            return handler.getAnimatedImage(handles[next[0]]);
+        });
+
+        final int[] OBJECT_COUNTS = {1, 100, 10000};
+        for (final int COUNT : OBJECT_COUNTS) {
+            AnimationEngine engine = new AnimationEngine();
+            for (int i = 0; i < COUNT; i++) {
+                engine.add(new WalkingObject(sprites[0], i));
+            }
+            engine.tick();
+            run("AnimationEngine.tick objects=" + COUNT, () -> {
+                engine.tick();
+                return engine;
+            });
+            run("AnimationEngine.publish objects=" + COUNT, () -> {
+                engine.publish();
+                return engine;
+            });
+        }
+
+        // The same numbers of sprites as entities, and as the same objects adapted to rows
+        for (final int COUNT : OBJECT_COUNTS) {
+            AnimationEngine engine = new AnimationEngine();
+            EntityStore entities = engine.getEntities();
+            int first = entities.addSprites(sprites);
+            for (int i = 0; i < COUNT; i++) {
+                entities.add(i % 1800, i % 1000, first + i % 36, 4, 1 / 12f);
+            }
+            engine.tick();
+            run("AnimationEngine.tick entities=" + COUNT, () -> {
+                engine.tick();
+                return engine;
+            });
+            run("AnimationEngine.publish entities=" + COUNT, () -> {
+                engine.publish();
+                return engine;
+            });
+        }
+        AnimationEngine adapting = new AnimationEngine();
+        for (int i = 0; i < 10000; i++) {
+            adapting.getEntities().add(new WalkingObject(sprites[0], i));
+        }
+        run("AnimationEngine.tick adapted=10000", () -> {
+            adapting.tick();
+            return adapting;
+        });
+
+        ScreenDoggo doggo = new ScreenDoggo(new AnimationEngine(), createSprites(40, 64), false);
+
+        // Hit testing and overlap queries over 1000 objects spread over a 1920 by 1080 screen
+        AnimatedObject[] pets = new AnimatedObject[1000];
+        for (int i = 0; i < pets.length; i++) {
+            pets[i] = new WalkingObject(sprites[0], i * 37);
+        }
+        SpatialGrid grid = new SpatialGrid();
+        run("SpatialGrid.rebuild objects=1000", () -> {
+            grid.rebuild(pets);
+            return grid;
+        });
+        int[] overlapping = new int[64];
+        run("SpatialGrid.getOverlapping objects=1000", () -> {
+            next[0] = next[0] == pets.length - 1 ? 0 : next[0] + 1;
+            return grid.getOverlapping(next[0], overlapping);
+        });
+        run("SpatialGrid.hitTest objects=1000", () -> {
+            next[0] = next[0] == pets.length - 1 ? 0 : next[0] + 1;
+            return grid.hitTest(pets[next[0]].getX() + 1, pets[next[0]].getY() + 1);
+        });
+        run("AnimatedObject.intersects linear objects=1000", () -> {
+            next[0] = next[0] == pets.length - 1 ? 0 : next[0] + 1;
+            ScreenDoggo probe = doggo;
+            int found = 0;
+            for (AnimatedObject pet : pets) {
+                if (probe.intersects(pet))
+                    found++;
+            }
+            return found;
+        });
+
+        // Following a pointer that circles the doggo, so it walks, runs and sits
+        final int POINTS = 360;
+        int[] pointerX = new int[POINTS], pointerY = new int[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            double radius = 40 + (i % 90) * 3;
+            pointerX[i] = (int) (Math.cos(Math.toRadians(i)) * radius);
+            pointerY[i] = (int) (Math.sin(Math.toRadians(i)) * radius);
+        }
+        int[] point = new int[1];
+        run("ScreenDoggo.follow", () -> {
+            point[0] = point[0] == POINTS - 1 ? 0 : point[0] + 1;
+            doggo.follow(doggo.getX() + pointerX[point[0]], doggo.getY() + pointerY[point[0]]);
+            return doggo;
+        });
+
+        // Steering pets that seek, arrive, wander and flee around a moving target
+        final int[] BODIES = {100, 1000};
+        for (final int COUNT : BODIES) {
+            MovementSystem movement = new MovementSystem();
+            MovementSystem.Steering[] steerings = MovementSystem.Steering.values();
+            for (int i = 0; i < COUNT; i++) {
+                int body = movement.add(i * 37 % 1920, i * 53 % 1080);
+                movement.setSteering(body, steerings[1 + i % (steerings.length - 1)]);
+            }
+            run("MovementSystem.tick bodies=" + COUNT, () -> {
+                point[0] = point[0] == POINTS - 1 ? 0 : point[0] + 1;
+                for (int i = 0; i < COUNT; i++) {
+                    movement.setTarget(i, 960 + pointerX[point[0]], 540 + pointerY[point[0]]);
+                }
+                movement.tick(1 / 60f);
+                return movement;
+            });
+        }
+
+        // Reading the shared pointer, and an event moving it
+        PointerSampler pointer = new PointerSampler();
+        pointer.setSampling(false);
+        run("PointerSampler.getPosition", () -> pointer.getPosition());
+        run("PointerSampler.update", () -> {
+            point[0] = point[0] == POINTS - 1 ? 0 : point[0] + 1;
+            pointer.update(pointerX[point[0]], pointerY[point[0]]);
+            return pointer;
+        });
+
+        // Audio
+        final int[] PLAYLIST_SIZES = {100, 10000};
+        for (final int SIZE : PLAYLIST_SIZES) {
+            BiClip[] clips = new BiClip[SIZE];
+            for (int i = 0; i < SIZE; i++) {
+                clips[i] = new BiClip("Music/Bench/Song" + i + ".wav");
+            }
+            run("SongQueue.<init> songs=" + SIZE, () -> new SongQueue(clips));
+        }
+
+        // Resources
+        File tree = createTree(20, 50);
+        String treePath = tree.getAbsolutePath();
+        run("ResourceParser.getResourcesByKey tree=1000", () -> ResourceParser
+            .getResourcesByKey(treePath, ".wav"));
+
+        File cacheDir = createTemporaryDirectory();
+        System.setProperty("doggo.cacheDir", cacheDir.getAbsolutePath());
+        File jar = createJar(50, 100);
+        String jarPath = jar.getAbsolutePath();
+        temporary.add(ResourceIndexCache.getCacheFile(jar));
+        run("ResourceIndex.build jar=5000 cached", () -> ResourceIndex.build(jarPath));
+        ResourceIndex index = ResourceIndex.build(jarPath);
+        run("ResourceIndex.getDirectory", () -> index.getDirectory("Dir7"));
+
+        BufferedImage sprite = sprites[0];
+        run("ResourceParser.resizeImage x2", () -> ResourceParser.resizeImage(sprite, 2));
+
+        // Painting the dirty area of 10 moving objects, as AnimatedObjectPanel does
+        BufferedImage screen = ResourceParser.createCompatibleImage(1920, 1080);
+        AnimatedObject[] objects = new AnimatedObject[10];
+        for (int i = 0; i < objects.length; i++) {
+            objects[i] = new WalkingObject(sprites[0], i * 100);
+        }
+        DirtyRegionTracker dirtyRegions = new DirtyRegionTracker();
+        RenderSnapshot snapshot = new RenderSnapshot();
+        long[] tick = new long[1];
+        run("AnimatedObjectPanel.paintObjects objects=10", () -> {
+            for (AnimatedObject obj : objects) {
+                obj.animate();
+            }
+            snapshot.capture(objects, ++tick[0]);
+            Graphics2D g = screen.createGraphics();
+            if (dirtyRegions.update(snapshot)) {
+                Rectangle dirty = dirtyRegions.getDirty();
+                g.setClip(dirty);
+                g.clearRect(dirty.x, dirty.y, dirty.width, dirty.height);
+            }
+            AnimatedObjectPanel.paintObjects(g, snapshot, dirtyRegions);
+            g.dispose();
+            return screen;
+        });
+    }
+
+    /**
+     * Warms up and measures a benchmark if it matches the filter, printing its result.
+     * @param name The name of the benchmark
+     * @param benchmark The operation to measure
+     */
+    private void run(String name, Benchmark benchmark) {
+        if (!name.contains(filter))
+            return;
+        // Batches the operations so reading the clock does not dominate short operations
+        int batch = 1;
+        while (true) {
+            long batchStart = System.nanoTime();
+            runBatch(benchmark, batch);
+            if (System.nanoTime() - batchStart > 1000000 || batch >= 1 << 24)
+                break;
+            batch *= 2;
+        }
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(benchmark, batch);
+        }
+        double[] scores = new double[MEASURED_ITERATIONS];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = iteration(benchmark, batch);
+        }
+        double mean = 0;
+        for (double score : scores) {
+            mean += score;
+        }
+        mean /= scores.length;
+        double variance = 0;
+        for (double score : scores) {
+            variance += (score - mean) * (score - mean);
+        }
+        double error = Z_999 * Math.sqrt(variance / (scores.length - 1) / scores.length);
+        System.out.println(String.format(Locale.ROOT, "%-48s %4d %14.3f +- %10.3f  ns/op", name,
+            scores.length, mean, error));
+    }
+
+    /**
+     * Runs batches of a benchmark for ITERATION_MILLIS.
+     * @return The mean nanoseconds per operation
+     */
+    private static double iteration(Benchmark benchmark, final int BATCH) {
+        final long END = System.nanoTime() + ITERATION_MILLIS * 1000000L;
+        long operations = 0;
+        long start = System.nanoTime();
+        long now;
+        do {
+            runBatch(benchmark, BATCH);
+            operations += BATCH;
+            now = System.nanoTime();
+        } while (now < END);
+        return (double) (now - start) / operations;
+    }
+
+    private static void runBatch(Benchmark benchmark, final int BATCH) {
+        for (int i = 0; i < BATCH; i++) {
+            sink = benchmark.run();
+        }
+    }
+
+    /**
+     * Creates blank, screen compatible sprites.
+     */
+    private static BufferedImage[] createSprites(final int COUNT, final int SIZE) {
+        BufferedImage[] sprites = new BufferedImage[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            sprites[i] = ResourceParser.createCompatibleImage(SIZE, SIZE);
+        }
+        return sprites;
+    }
+
+    private File createTemporaryDirectory() throws IOException {
+        File dir = Files.createTempDirectory("doggo-bench").toFile();
+        temporary.add(dir);
+        return dir;
+    }
+
+    /**
+     * Creates a directory of directories of empty .wav files.
+     */
+    private File createTree(final int DIRECTORIES, final int FILES) throws IOException {
+        File root = createTemporaryDirectory();
+        for (int d = 0; d < DIRECTORIES; d++) {
+            File dir = new File(root, "Dir" + d);
+            dir.mkdir();
+            temporary.add(dir);
+            for (int f = 0; f < FILES; f++) {
+                File file = new File(dir, "Song" + f + ".wav");
+                file.createNewFile();
+                temporary.add(file);
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Creates a JAR of directories of empty .wav entries.
+     */
+    private File createJar(final int DIRECTORIES, final int FILES) throws IOException {
+        File jar = File.createTempFile("doggo-bench", ".jar");
+        temporary.add(jar);
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (int d = 0; d < DIRECTORIES; d++) {
+                for (int f = 0; f < FILES; f++) {
+                    out.putNextEntry(new JarEntry("Dir" + d + "/Song" + f + ".wav"));
+                    out.closeEntry();
+                }
+            }
+        }
+        return jar;
+    }
+
+    /**
+     * Deletes the temporary files, children before their directories.
+     */
+    private void deleteTemporary() {
+        for (int i = temporary.size() - 1; i >= 0; i--) {
+            temporary.get(i).delete();
+        }
+    }
+
+    /**
+     * An AnimatedObject that walks diagonally across a 1920 by 1080 screen.
+     */
+    private static class WalkingObject implements AnimatedObject {
+
+        private final BufferedImage image;
+        private int x, y;
+
+        private WalkingObject(BufferedImage image, int offset) {
+            this.image = image;
+            x = offset % 1800;
+            y = offset % 1000;
+        }
+
+        @Override
+        public int getX() {
+            return x;
+        }
+
+        @Override
+        public int getY() {
+            return y;
+        }
+
+        @Override
+        public int getWidth() {
+            return image.getWidth();
+        }
+
+        @Override
+        public int getHeight() {
+            return image.getHeight();
+        }
+
+        @Override
+        public BufferedImage getImage() {
+            return image;
+        }
+
+        @Override
+        public void animate() {
+            x = x >= 1800 ? 0 : x + 3;
+            y = y >= 1000 ? 0 : y + 1;
+        }
+
+        @Override
+        public boolean intersects(AnimatedObject obj) {
+            return false;
+        }
+    }
+}
@@ -1,15 +1,15 @@
 import java.io.File;
 import java.io.IOException;
-import javax.sound.sampled.AudioInputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.BooleanControl;
 import javax.sound.sampled.Clip;
 import javax.sound.sampled.FloatControl;
-import javax.sound.sampled.LineEvent;
-import javax.sound.sampled.LineListener;
-import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.UnsupportedAudioFileException;
-import javax.swing.JOptionPane;
 
 /**
  * @author youngAgFox
@@ -19,26 +19,57 @@ import javax.swing.JOptionPane;
  * passing in the clip.
  * 
  * Allows muting and volume control of clips.
+ * 
+ * The audio is only opened when the clip is first played, and released again once it
+ * finishes. At most getMaxOpenClips() BiClips hold their resources at a time, the least
+ * recently used ones that are not playing are released first.
+ * 
+ * Sounds up to STREAMING_THRESHOLD_SECONDS long are played by a ClipPlayback, which decodes
+ * them into memory. Longer ones (and ones of unknown length) are streamed by a StreamPlayback.
+ * Sound effects are played from the SoundBank instead, and are not counted as open clips.
  */
 public class BiClip {
 
+    public static final int DEFAULT_MAX_OPEN_CLIPS = 8;
+    public static final float STREAMING_THRESHOLD_SECONDS = 10;
+
+    /**
+     * The BiClips currently holding a Clip, from least to most recently used.
+     */
+    private static final LinkedHashMap<BiClip, Boolean> openClips =
+        new LinkedHashMap<BiClip, Boolean>(16, 0.75f, true);
+    private static int maxOpenClips = DEFAULT_MAX_OPEN_CLIPS;
+
     private final String RESOURCE;
-    private Clip clip;
-    private AudioInputStream audioInputStream;
-    private BooleanControl muteControl;
+    private final boolean EFFECT;
+    // Released by the onDone callbacks on the audio threads
+    private volatile Playback playback;
+    private Boolean streaming;
     private boolean mute;
-    private FloatControl volumeControl;
     private float volume;
     private String name;
 
     /**
      *  
-     * Constructor for creating a Clip and associated objects from a resource from
-     * an objects ClassLoader. Parses the passed resource and removes extension for
-     * name field.
+     * Constructor for a Clip from a resource from an objects ClassLoader. Parses the passed
+     * resource and removes extension for name field. Does not open the resource, that is
+     * done when the clip is first played.
      * @param resource The String name of the resource to load in.
      */
     BiClip(String resource) {
+        this(resource, false);
+    }
+
+    /**
+     * Constructor for a Clip from a resource from an objects ClassLoader, that can be a short
+     * sound effect. Effects are decoded once by the SoundBank and played from its pool of
+     * open lines, so plays can overlap and replaying needs no I/O.
+     * @param resource The String name of the resource to load in.
+     * @param EFFECT If this is a sound effect
+     * @see SoundBank
+     */
+    BiClip(String resource, final boolean EFFECT) {
+        this.EFFECT = EFFECT;
         RESOURCE = resource;
         for (int i = resource.length() - 1; i >= 0; i--) {
             if (File.separatorChar == resource.charAt(i) || resource.charAt(i) == '/'
@@ -54,101 +85,135 @@ public class BiClip {
         }
         if (name == null)
             name = resource;
+    }
 
-        // set fields
-        reset();
+    /**
+     * Sets the maximum number of BiClips that may hold an open stream and Clip line at once.
+     * Playing clips are never released, so the limit can be exceeded while they play.
+     * @param max The maximum number of open BiClips
+     * @throws IllegalArgumentException if max is less than one
+     */
+    public static void setMaxOpenClips(int max) {
+        if (max < 1)
+            throw new IllegalArgumentException("At least one clip must be allowed open: " + max);
+        synchronized (openClips) {
+            maxOpenClips = max;
+        }
+        releaseLeastRecentlyUsed(null);
     }
 
     /**
-     * Obtains the clip object from the AudioSystem.
-     * @see AudioSystem#getClip()
+     * Returns the maximum number of BiClips that may hold an open stream and Clip line at once.
+     * @return The maximum number of open BiClips
      */
-    private void getClip() {
-        try {
-            clip = AudioSystem.getClip();
-            clip.addLineListener(new LineHandler());
-        } catch (LineUnavailableException e) {
-            JOptionPane.showMessageDialog(null, "Doggo Audio Line or IO Error! " + e.getMessage());
-            e.printStackTrace();
+    public static int getMaxOpenClips() {
+        synchronized (openClips) {
+            return maxOpenClips;
         }
     }
 
     /**
-     * Obtains an AudioInputStream object from AudioSystem and a resource file.
-     * @param resource
-     * @see AudioSystem#getAudioInputStream(java.io.InputStream)
+     * Marks this BiClip as the most recently used, releasing the least recently used BiClips
+     * (other than this one, which is about to play) if too many are open.
      */
-    private void getStream(String resource) {
-        try {
-            audioInputStream = AudioSystem.getAudioInputStream(getClass().getResource(resource));
-        } catch (UnsupportedAudioFileException | IOException e) {
-            e.printStackTrace();
-            System.out
-                .println("Doggo BarkIO Error! " + e.getMessage() + " for resource: " + resource);
-            closeStream();
-        } catch (NullPointerException e) {
-            System.out.println("Resource incorrectly spelled or not found for: " + resource);
-            closeStream();
+    private void touch() {
+        synchronized (openClips) {
+            openClips.put(this, Boolean.TRUE);
         }
+        releaseLeastRecentlyUsed(this);
     }
 
     /**
-     * Closes the AudioInputStream object.
+     * Releases the least recently used BiClips that are not playing until no more than the
+     * maximum are open. The BiClips are released outside of the lock, as releasing one
+     * stops its Clip.
+     * @param opening A BiClip being opened, which is not playing yet but must not be
+     * released, or null
      */
-    private void closeStream() {
-        try {
-            if (audioInputStream != null)
-                audioInputStream.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+    private static void releaseLeastRecentlyUsed(BiClip opening) {
+        ArrayList<BiClip> released = new ArrayList<>();
+        synchronized (openClips) {
+            int excess = openClips.size() - maxOpenClips;
+            Iterator<BiClip> it = openClips.keySet().iterator();
+            while (excess > 0 && it.hasNext()) {
+                BiClip biClip = it.next();
+                if (biClip != opening && !biClip.isPlaying()) {
+                    it.remove();
+                    released.add(biClip);
+                    excess--;
+                }
+            }
+        }
+        for (BiClip biClip : released) {
+            biClip.release();
         }
     }
 
     /**
-     * Opens the clip, reserving system resources.
+     * Reads the header of the resource to decide between decoding it into a Clip and
+     * streaming it. Only done once.
+     * @return true if the resource should be streamed, false otherwise
      */
-    private void openClip() {
-        try {
-            clip.open(audioInputStream);
-            muteControl = (BooleanControl) clip.getControl(BooleanControl.Type.MUTE);
-            volumeControl = (FloatControl) clip.getControl(FloatControl.Type.MASTER_GAIN);
-            update();
-        } catch (IOException e) {
-            System.out.println("IOException: " + e.getMessage());
-            closeAll();
-        } catch (LineUnavailableException e) {
-            System.out.println("Could not aquire system resources for clip: " + e.getMessage());
-            closeAll();
-        } catch (IllegalArgumentException e) {
-            System.out
-                .println(e.getMessage() + " for resource: " + RESOURCE + ". Closing to retry.");
-            closeAll();
-        } catch (NullPointerException e) {
-            System.out.println("Null pointer in openClip...");
-            System.out.println("audioInputStream null: " + audioInputStream == null);
-            System.out.println("clip null: " + clip == null);
-            if (audioInputStream == null)
-                getStream(RESOURCE);
-            if (clip == null)
-                getClip();
+    private boolean shouldStream() {
+        if (streaming == null) {
+            streaming = Boolean.FALSE;
+            URL url = BiClip.class.getResource(RESOURCE);
+            if (url != null) {
+                try {
+                    AudioFileFormat fileFormat = AudioSystem.getAudioFileFormat(url);
+                    AudioFormat format = fileFormat.getFormat();
+                    int frames = fileFormat.getFrameLength();
+                    streaming = frames == AudioSystem.NOT_SPECIFIED
+                        || frames / format.getFrameRate() > STREAMING_THRESHOLD_SECONDS;
+                } catch (UnsupportedAudioFileException | IOException e) {
+                    // Left to the ClipPlayback to report
+                }
+            }
         }
+        return streaming;
     }
 
     /**
-     * Allows a clip to be replayed by regenerating it.
+     * Creates and opens the playback if there is none yet or it was released, or reopens
+     * the effect from the SoundBank if its lines were released.
+     * @return The open playback, or null if it could not be opened
      */
-    private void reset() {
-        getStream(RESOURCE);
-        getClip();
+    private Playback open() {
+        Playback playback = this.playback;
+        // The lines of an effect are closed by SoundBank.releaseAll(), it is opened again
+        if (EFFECT && playback != null && !playback.isOpen())
+            playback = null;
+        if (playback == null) {
+            Runnable onDone = new Runnable() {
+
+                @Override
+                public void run() {
+                    closeAll();
+                }
+            };
+            if (EFFECT)
+                playback = SoundBank.get(RESOURCE);
+            else if (shouldStream())
+                playback = new StreamPlayback(RESOURCE, onDone);
+            else
+                playback = new ClipPlayback(RESOURCE, onDone);
+            if (playback == null || !playback.open())
+                return null;
+            this.playback = playback;
+            update();
+        }
+        if (!EFFECT)
+            touch();
+        return playback.isOpen() ? playback : null;
     }
 
     /**
      * Opens the clip and then starts playback.
      */
     public void play() {
-        if (!clip.isOpen())
-            openClip();
-        clip.start();
+        Playback playback = open();
+        if (playback != null)
+            playback.start();
     }
 
     /**
@@ -157,9 +222,9 @@ public class BiClip {
      * clip once.
      */
     public void loop(int loops) {
-        if (!clip.isOpen())
-            openClip();
-        clip.loop(loops);
+        Playback playback = open();
+        if (playback != null)
+            playback.loop(loops);
     }
 
     /**
@@ -173,14 +238,18 @@ public class BiClip {
      * Starts play of the clip. Does not do anything if the clip was already playing.
      */
     public void resume() {
-        clip.start();
+        Playback playback = this.playback;
+        if (playback != null)
+            playback.start();
     }
 
     /**
      * Stops play of the clip without closing the clip.
      */
     public void pause() {
-        clip.stop();
+        Playback playback = this.playback;
+        if (playback != null)
+            playback.stop();
     }
 
     /**
@@ -224,9 +293,8 @@ public class BiClip {
      * @return true if the clip is done playing, false otherwise.
      */
     public boolean isDone() {
-        if (clip.getFramePosition() >= clip.getFrameLength())
-            return true;
-        return false;
+        Playback playback = this.playback;
+        return playback != null && playback.isDone();
     }
 
     /**
@@ -234,7 +302,8 @@ public class BiClip {
      * @return true if the clip is currently playing, false otherwise.
      */
     public boolean isPlaying() {
-        return clip.isRunning();
+        Playback playback = this.playback;
+        return playback != null && playback.isRunning();
     }
 
     /**
@@ -242,7 +311,8 @@ public class BiClip {
      * @return true if the clip is being read/ played, false otherwise.
      */
     public boolean isActive() {
-        return clip.isActive();
+        Playback playback = this.playback;
+        return playback != null && playback.isActive();
     }
 
     /**
@@ -250,7 +320,27 @@ public class BiClip {
      * @return true if the clip is open, false otherwise
      */
     public boolean isOpen() {
-        return clip.isOpen();
+        Playback playback = this.playback;
+        return playback != null && playback.isOpen();
+    }
+
+    /**
+     * Returns if this clip is streamed rather than decoded into memory. Reads the header
+     * of the resource the first time it is called.
+     * @return true if the clip is streamed, false otherwise
+     */
+    public boolean isStreaming() {
+        return !EFFECT && shouldStream();
+    }
+
+    /**
+     * Returns the number of bytes of audio data this clip currently holds in memory.
+     * @return The resident audio bytes, 0 if the clip is not open
+     * @see Playback#getResidentBytes()
+     */
+    public long getResidentBytes() {
+        Playback playback = this.playback;
+        return playback == null ? 0 : playback.getResidentBytes();
     }
 
     /**
@@ -270,53 +360,36 @@ public class BiClip {
     }
 
     /**
-     * Attempts to set the controls as the user defined values. If the controls are
-     * null it is because they have not been opened yet. The appropriate update call is
-     * made in after the resources are opened.
+     * Attempts to set the controls as the user defined values. If there is no playback it is
+     * because it has not been opened yet. The appropriate update call is made after it is
+     * opened.
      */
     private void update() {
-        if (muteControl != null) {
-            muteControl.setValue(mute);
+        Playback playback = this.playback;
+        if (playback != null) {
+            playback.setMute(mute);
+            playback.setGain(volume);
         }
-        if (volumeControl != null)
-            volumeControl.setValue(volume);
     }
 
     /**
-     * Closes the clip and stream allowing the system to reclaim its resources.
-     * Also resets these contained objects to allow a subsequent open() and start() calls
-     * later on.
-     * @throws IllegalStateException if the clip has not been opened.
+     * Closes the playback allowing the system to reclaim its resources.
+     * They are obtained again the next time the clip is played.
      */
     private void closeAll() {
-        closeClip();
-        closeStream();
-        reset();
-    }
-
-    /**
-     * Closes the clip allowing the system to reclaim its resources.
-     * @throws IllegalStateException if the clip has not been opened.
-     */
-    private void closeClip() {
-        clip.stop();
-        clip.flush();
-        clip.close();
+        synchronized (openClips) {
+            openClips.remove(this);
+        }
+        release();
     }
 
     /**
-     * A LineListener object that automatically closes the object when the
-     * clip has finished playing.
-     * @author youngAgFox
-     *
+     * Closes and forgets the playback.
      */
-    private class LineHandler implements LineListener {
-
-        @Override
-        public void update(LineEvent event) {
-            if (event.getType() == LineEvent.Type.STOP
-                && event.getFramePosition() >= clip.getFrameLength())
-                closeAll();
-        }
+    private void release() {
+        Playback playback = this.playback;
+        this.playback = null;
+        if (playback != null)
+            playback.close();
     }
 }
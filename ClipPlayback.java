@@ -0,0 +1,232 @@
+import java.io.IOException;
+import java.net.URL;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.BooleanControl;
+import javax.sound.sampled.Clip;
+import javax.sound.sampled.FloatControl;
+import javax.sound.sampled.LineEvent;
+import javax.sound.sampled.LineListener;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import javax.swing.JOptionPane;
+
+/**
+ * A Playback that decodes the whole resource into a Clip. Starts instantly and loops
+ * seamlessly, but holds the complete decoded audio in memory, so it is meant for short sounds.
+ */
+public class ClipPlayback implements Playback {
+
+    private final String RESOURCE;
+    private final Runnable ON_DONE;
+    private Clip clip;
+    private AudioInputStream audioInputStream;
+    private BooleanControl muteControl;
+    private FloatControl volumeControl;
+    private boolean mute;
+    private float gain;
+
+    /**
+     * Creates an unopened ClipPlayback of a class path resource.
+     * @param RESOURCE The resource to play
+     * @param ON_DONE Run on the line's event thread once the clip played to its end
+     */
+    public ClipPlayback(final String RESOURCE, final Runnable ON_DONE) {
+        this.RESOURCE = RESOURCE;
+        this.ON_DONE = ON_DONE;
+    }
+
+    /**
+     * Obtains the stream and clip, then opens the clip.
+     */
+    @Override
+    public boolean open() {
+        getStream();
+        if (audioInputStream == null)
+            return false;
+        getClip();
+        if (clip == null)
+            return false;
+        openClip();
+        return isOpen();
+    }
+
+    /**
+     * Obtains the clip object from the AudioSystem.
+     * @see AudioSystem#getClip()
+     */
+    private void getClip() {
+        try {
+            clip = AudioSystem.getClip();
+            clip.addLineListener(new LineHandler());
+        } catch (LineUnavailableException e) {
+            JOptionPane.showMessageDialog(null, "Doggo Audio Line or IO Error! " + e.getMessage());
+            e.printStackTrace();
+        } catch (IllegalArgumentException e) {
+            System.out.println("No audio line for resource: " + RESOURCE + ". " + e.getMessage());
+        }
+    }
+
+    /**
+     * Obtains an AudioInputStream object from AudioSystem and the resource.
+     * @see AudioSystem#getAudioInputStream(java.io.InputStream)
+     */
+    private void getStream() {
+        URL url = BiClip.class.getResource(RESOURCE);
+        if (url == null) {
+            System.out.println("Resource incorrectly spelled or not found for: " + RESOURCE);
+            return;
+        }
+        try {
+            audioInputStream = AudioSystem.getAudioInputStream(url);
+        } catch (UnsupportedAudioFileException | IOException e) {
+            e.printStackTrace();
+            System.out
+                .println("Doggo BarkIO Error! " + e.getMessage() + " for resource: " + RESOURCE);
+            closeStream();
+        }
+    }
+
+    /**
+     * Closes the AudioInputStream object.
+     */
+    private void closeStream() {
+        try {
+            if (audioInputStream != null)
+                audioInputStream.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        audioInputStream = null;
+    }
+
+    /**
+     * Opens the clip, reserving system resources.
+     */
+    private void openClip() {
+        try {
+            clip.open(audioInputStream);
+            if (clip.isControlSupported(BooleanControl.Type.MUTE))
+                muteControl = (BooleanControl) clip.getControl(BooleanControl.Type.MUTE);
+            if (clip.isControlSupported(FloatControl.Type.MASTER_GAIN))
+                volumeControl = (FloatControl) clip.getControl(FloatControl.Type.MASTER_GAIN);
+            update();
+        } catch (IOException e) {
+            System.out.println("IOException: " + e.getMessage());
+            close();
+        } catch (LineUnavailableException e) {
+            System.out.println("Could not aquire system resources for clip: " + e.getMessage());
+            close();
+        } catch (IllegalArgumentException e) {
+            System.out
+                .println(e.getMessage() + " for resource: " + RESOURCE + ". Closing to retry.");
+            close();
+        }
+    }
+
+    @Override
+    public void start() {
+        if (clip != null)
+            clip.start();
+    }
+
+    @Override
+    public void loop(int loops) {
+        if (clip != null)
+            clip.loop(loops);
+    }
+
+    @Override
+    public void stop() {
+        if (clip != null)
+            clip.stop();
+    }
+
+    /**
+     * Closes the clip and stream allowing the system to reclaim its resources.
+     */
+    @Override
+    public void close() {
+        Clip clip = this.clip;
+        if (clip != null) {
+            clip.stop();
+            clip.flush();
+            clip.close();
+        }
+        closeStream();
+        this.clip = null;
+        muteControl = null;
+        volumeControl = null;
+    }
+
+    @Override
+    public boolean isOpen() {
+        Clip clip = this.clip;
+        return clip != null && clip.isOpen();
+    }
+
+    @Override
+    public boolean isRunning() {
+        Clip clip = this.clip;
+        return clip != null && clip.isRunning();
+    }
+
+    @Override
+    public boolean isActive() {
+        Clip clip = this.clip;
+        return clip != null && clip.isActive();
+    }
+
+    @Override
+    public boolean isDone() {
+        Clip clip = this.clip;
+        return clip != null && clip.getFramePosition() >= clip.getFrameLength();
+    }
+
+    @Override
+    public void setMute(boolean mute) {
+        this.mute = mute;
+        update();
+    }
+
+    @Override
+    public void setGain(float gain) {
+        this.gain = gain;
+        update();
+    }
+
+    /**
+     * The whole decoded clip is resident while the clip is open.
+     */
+    @Override
+    public long getResidentBytes() {
+        Clip clip = this.clip;
+        if (clip == null || !clip.isOpen())
+            return 0;
+        return (long) clip.getFrameLength() * clip.getFormat().getFrameSize();
+    }
+
+    /**
+     * Sets the controls to the user defined values, if they have been obtained.
+     */
+    private void update() {
+        if (muteControl != null)
+            muteControl.setValue(mute);
+        if (volumeControl != null)
+            volumeControl.setValue(gain);
+    }
+
+    /**
+     * A LineListener object that reports when the clip has finished playing.
+     */
+    private class LineHandler implements LineListener {
+
+        @Override
+        public void update(LineEvent event) {
+            Clip line = (Clip) event.getLine();
+            if (event.getType() == LineEvent.Type.STOP && line == clip
+                && event.getFramePosition() >= line.getFrameLength())
+                ON_DONE.run();
+        }
+    }
+}
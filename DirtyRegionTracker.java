@@ -0,0 +1,161 @@
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+
+/**
+ * Tracks where each AnimatedObject has been drawn on screen, so only the area that changed
+ * has to be repainted.
+ * 
+ * The painting thread reports every object it draws with drawn(). The animating thread calls
+ * update() after a tick, which marks an object dirty if it is no longer where (or as) it was
+ * last shown. The dirty area of an object covers everywhere it was drawn since the previous
+ * update as well as its current bounds, so a paint that ran while the object was moving never
+ * leaves a stale copy behind. Objects that were removed leave the area they were shown in
+ * dirty. The dirty areas of all objects are combined into one rectangle.
+ */
+public class DirtyRegionTracker {
+
+    private final IdentityHashMap<AnimatedObject, Bounds> shown;
+    private final Rectangle dirty;
+    private int frame;
+
+    /**
+     * Creates a DirtyRegionTracker that has not seen any objects.
+     */
+    public DirtyRegionTracker() {
+        shown = new IdentityHashMap<>();
+        dirty = new Rectangle();
+        frame = 0;
+    }
+
+    /**
+     * Records that an object was drawn at the given bounds with the given image.
+     * @param obj The object that was drawn
+     * @param x The x coordinate it was drawn at
+     * @param y The y coordinate it was drawn at
+     * @param width The width it was drawn with
+     * @param height The height it was drawn with
+     * @param image The image it was drawn with
+     */
+    public synchronized void drawn(AnimatedObject obj, int x, int y, int width, int height,
+        BufferedImage image) {
+        Bounds bounds = shown.get(obj);
+        if (bounds == null) {
+            bounds = new Bounds();
+            bounds.frame = frame;
+            shown.put(obj, bounds);
+        }
+        bounds.draw(x, y, width, height, image);
+    }
+
+    /**
+     * Compares the objects against how they are shown and computes the dirty rectangle.
+     * @param snapshot The objects that will be drawn next
+     * @return true if anything is dirty, false if nothing changed
+     * @see #getDirty()
+     */
+    public synchronized boolean update(RenderSnapshot snapshot) {
+        frame++;
+        dirty.setBounds(0, 0, 0, 0);
+        long now = System.nanoTime();
+        for (int i = 0; i < snapshot.size(); i++) {
+            AnimatedObject obj = snapshot.getObject(i);
+            Bounds bounds = shown.get(obj);
+            int x = snapshot.getX(i);
+            int y = snapshot.getY(i);
+            int width = snapshot.getWidth(i);
+            int height = snapshot.getHeight(i);
+            if (bounds == null) {
+                bounds = new Bounds();
+                shown.put(obj, bounds);
+                add(x, y, width, height);
+            } else if (!bounds.isShowing(x, y, width, height, snapshot.getImageAt(i, now))) {
+                add(bounds.areaX, bounds.areaY, bounds.areaWidth, bounds.areaHeight);
+                add(x, y, width, height);
+                // The repaint clears everything but the last drawn bounds
+                bounds.resetArea();
+            }
+            bounds.frame = frame;
+        }
+        if (shown.size() > snapshot.size()) {
+            Iterator<Bounds> it = shown.values().iterator();
+            while (it.hasNext()) {
+                Bounds bounds = it.next();
+                if (bounds.frame != frame) {
+                    add(bounds.areaX, bounds.areaY, bounds.areaWidth, bounds.areaHeight);
+                    it.remove();
+                }
+            }
+        }
+        return !dirty.isEmpty();
+    }
+
+    /**
+     * Returns the union of all dirty areas found by the last update. The returned rectangle
+     * is reused by the next update.
+     * @return The dirty rectangle, empty if nothing changed
+     */
+    public Rectangle getDirty() {
+        return dirty;
+    }
+
+    /**
+     * Adds an area to the dirty rectangle. Does not allocate.
+     */
+    private void add(int x, int y, int width, int height) {
+        if (width <= 0 || height <= 0)
+            return;
+        if (dirty.isEmpty()) {
+            dirty.setBounds(x, y, width, height);
+            return;
+        }
+        int x2 = Math.max(dirty.x + dirty.width, x + width);
+        int y2 = Math.max(dirty.y + dirty.height, y + height);
+        dirty.x = Math.min(dirty.x, x);
+        dirty.y = Math.min(dirty.y, y);
+        dirty.width = x2 - dirty.x;
+        dirty.height = y2 - dirty.y;
+    }
+
+    /**
+     * Where an object was last drawn, and the area it was drawn in since the last update.
+     */
+    private static class Bounds {
+
+        private int x, y, width, height;
+        private BufferedImage image;
+        private int areaX, areaY, areaWidth, areaHeight;
+        private int frame;
+
+        private void draw(int x, int y, int width, int height, BufferedImage image) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.image = image;
+            if (areaWidth <= 0 || areaHeight <= 0) {
+                resetArea();
+                return;
+            }
+            int x2 = Math.max(areaX + areaWidth, x + width);
+            int y2 = Math.max(areaY + areaHeight, y + height);
+            areaX = Math.min(areaX, x);
+            areaY = Math.min(areaY, y);
+            areaWidth = x2 - areaX;
+            areaHeight = y2 - areaY;
+        }
+
+        private void resetArea() {
+            areaX = x;
+            areaY = y;
+            areaWidth = width;
+            areaHeight = height;
+        }
+
+        private boolean isShowing(int x, int y, int width, int height, BufferedImage image) {
+            return this.image == image && areaX == x && areaY == y && areaWidth == width
+                && areaHeight == height;
+        }
+    }
+}
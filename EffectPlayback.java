@@ -0,0 +1,211 @@
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.BooleanControl;
+import javax.sound.sampled.Clip;
+import javax.sound.sampled.FloatControl;
+import javax.sound.sampled.LineUnavailableException;
+
+/**
+ * A Playback of a short sound effect that was decoded once into PCM data by the SoundBank.
+ * Plays from a small pool of Clips (voices) that are opened once with the data and kept
+ * open, so playing needs no I/O, no decoding and no new line. Plays can overlap, each one
+ * uses a free voice, or restarts the voice that was started longest ago if all are busy.
+ * 
+ * Unlike other Playbacks, closing only stops the voices. The lines stay open for the next
+ * play until release() is called.
+ */
+public class EffectPlayback implements Playback {
+
+    private final String RESOURCE;
+    private final AudioFormat FORMAT;
+    private final byte[] DATA;
+    private final Clip[] voices;
+    private int nextVoice;
+    private boolean mute;
+    private float gain;
+
+    /**
+     * Creates an EffectPlayback of decoded audio. The voices are opened on the first open().
+     * @param RESOURCE The name of the effect, for error messages
+     * @param FORMAT The format of the data
+     * @param DATA The decoded PCM data
+     * @param VOICES The number of plays that can overlap
+     */
+    public EffectPlayback(final String RESOURCE, final AudioFormat FORMAT, final byte[] DATA,
+        final int VOICES) {
+        this.RESOURCE = RESOURCE;
+        this.FORMAT = FORMAT;
+        this.DATA = DATA;
+        voices = new Clip[VOICES];
+        nextVoice = 0;
+    }
+
+    /**
+     * Opens any voices that are not open yet.
+     */
+    @Override
+    public synchronized boolean open() {
+        for (int i = 0; i < voices.length; i++) {
+            if (voices[i] != null && voices[i].isOpen())
+                continue;
+            try {
+                Clip voice = AudioSystem.getClip();
+                voice.open(FORMAT, DATA, 0, DATA.length);
+                voices[i] = voice;
+            } catch (LineUnavailableException | IllegalArgumentException e) {
+                System.out.println("Could not open sound effect voice for resource: " + RESOURCE
+                    + ". " + e.getMessage());
+                break;
+            }
+        }
+        update();
+        return isOpen();
+    }
+
+    @Override
+    public void start() {
+        loop(0);
+    }
+
+    /**
+     * Plays the effect from its start on a free voice.
+     */
+    @Override
+    public synchronized void loop(int loops) {
+        Clip voice = nextVoice();
+        if (voice == null)
+            return;
+        voice.stop();
+        voice.setFramePosition(0);
+        if (loops == 0)
+            voice.start();
+        else
+            voice.loop(loops);
+    }
+
+    /**
+     * Returns the first voice that is not running, or the one that was started longest ago.
+     * @return The voice to play on, or null if no voice is open
+     */
+    private Clip nextVoice() {
+        for (int i = 0; i < voices.length; i++) {
+            int index = (nextVoice + i) % voices.length;
+            Clip voice = voices[index];
+            if (voice != null && voice.isOpen() && !voice.isRunning()) {
+                nextVoice = (index + 1) % voices.length;
+                return voice;
+            }
+        }
+        for (int i = 0; i < voices.length; i++) {
+            int index = (nextVoice + i) % voices.length;
+            if (voices[index] != null && voices[index].isOpen()) {
+                nextVoice = (index + 1) % voices.length;
+                return voices[index];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void stop() {
+        for (Clip voice : voices) {
+            if (voice != null)
+                voice.stop();
+        }
+    }
+
+    /**
+     * Stops all voices, keeping them open.
+     */
+    @Override
+    public void close() {
+        stop();
+    }
+
+    /**
+     * Closes all voices, releasing their lines. They are opened again by the next open().
+     */
+    public synchronized void release() {
+        for (int i = 0; i < voices.length; i++) {
+            if (voices[i] != null) {
+                voices[i].stop();
+                voices[i].close();
+                voices[i] = null;
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        for (Clip voice : voices) {
+            if (voice != null && voice.isOpen())
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        for (Clip voice : voices) {
+            if (voice != null && voice.isRunning())
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized boolean isActive() {
+        for (Clip voice : voices) {
+            if (voice != null && voice.isActive())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * An effect is done once none of its voices are running.
+     */
+    @Override
+    public boolean isDone() {
+        return !isRunning();
+    }
+
+    @Override
+    public synchronized void setMute(boolean mute) {
+        this.mute = mute;
+        update();
+    }
+
+    @Override
+    public synchronized void setGain(float gain) {
+        this.gain = gain;
+        update();
+    }
+
+    /**
+     * The decoded data is resident once in the bank and once in every open voice.
+     */
+    @Override
+    public synchronized long getResidentBytes() {
+        long bytes = DATA.length;
+        for (Clip voice : voices) {
+            if (voice != null && voice.isOpen())
+                bytes += DATA.length;
+        }
+        return bytes;
+    }
+
+    /**
+     * Sets the controls of every open voice to the user defined values.
+     */
+    private void update() {
+        for (Clip voice : voices) {
+            if (voice == null || !voice.isOpen())
+                continue;
+            if (voice.isControlSupported(BooleanControl.Type.MUTE))
+                ((BooleanControl) voice.getControl(BooleanControl.Type.MUTE)).setValue(mute);
+            if (voice.isControlSupported(FloatControl.Type.MASTER_GAIN))
+                ((FloatControl) voice.getControl(FloatControl.Type.MASTER_GAIN)).setValue(gain);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+import java.awt.EventQueue;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The pacing of an AnimationEngine: how many ticks and frames it ran, how long they took,
+ * how often it fell behind, and how long the EDT took to get to posted work. Registered as
+ * an MBean with register() so it can be watched with JConsole on a user's machine, and
+ * written once a second to a rolling CSV file with startCsv().
+ * 
+ * The counters are written by the engine thread only, the durations are recorded into
+ * LatencyHistograms from any thread. Recording allocates nothing, apart from the
+ * InvocationEvent that probeEventQueue() posts to the EDT.
+ */
+public class EngineMetrics implements EngineMetricsMBean {
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+    private static final String MBEAN_NAME = "ScreenDoggo:type=EngineMetrics";
+    // The number of EngineMetrics registered, which names the ones after the first
+    private static final AtomicInteger registrations = new AtomicInteger();
+    private static final String CSV_HEADER = "time,ticks_per_second,frames_per_second,cpu,"
+        + "catch_up_ticks,dropped_frames,tick_p50_ms,tick_p99_ms,paint_p50_ms,paint_p99_ms,"
+        + "event_queue_p50_ms,event_queue_p99_ms";
+
+    private final LatencyHistogram tickTimes = new LatencyHistogram();
+    private final LatencyHistogram paintTimes = new LatencyHistogram();
+    private final LatencyHistogram eventQueueTimes = new LatencyHistogram();
+    private volatile long ticks;
+    private volatile long catchUpTicks;
+    private volatile long frames;
+    private volatile long droppedFrames;
+    private volatile int ticksPerSecond;
+    private volatile int framesPerSecond;
+    private volatile double cpuUsage;
+    private volatile long probePosted;
+    private volatile boolean probePending;
+    private final Runnable probe = () -> {
+        eventQueueTimes.record(System.nanoTime() - probePosted);
+        probePending = false;
+    };
+    private ScheduledExecutorService csvWriter;
+    private ObjectName mbeanName;
+
+    /**
+     * Records the duration of a tick. Called by the engine thread.
+     * @param nanos How long the tick took
+     */
+    void tick(long nanos) {
+        ticks++;
+        tickTimes.record(nanos);
+    }
+
+    /**
+     * Records ticks that were run right after the first tick of a loop to catch up.
+     * Called by the engine thread.
+     * @param count The number of extra ticks
+     */
+    void catchUp(int count) {
+        catchUpTicks += count;
+    }
+
+    /**
+     * Records a rendered frame. Called by the engine thread.
+     */
+    void frame() {
+        frames++;
+    }
+
+    /**
+     * Records frames that were skipped because the engine was late. Called by the engine
+     * thread.
+     * @param count The number of skipped frames
+     */
+    void dropFrames(long count) {
+        droppedFrames += count;
+    }
+
+    /**
+     * Updates the rates of the last second. Called by the engine thread once a second.
+     * @param ticks The ticks run in the last second
+     * @param frames The frames rendered in the last second
+     * @param cpuUsage The CPU usage of the engine thread
+     */
+    void second(int ticks, int frames, double cpuUsage) {
+        ticksPerSecond = ticks;
+        framesPerSecond = frames;
+        this.cpuUsage = cpuUsage;
+    }
+
+    /**
+     * Records how long it took to draw the objects, wherever they were drawn.
+     * @param nanos The duration of the paint
+     */
+    public void paint(long nanos) {
+        paintTimes.record(nanos);
+    }
+
+    /**
+     * Posts a task to the EDT that records how long it waited to run, unless the last one
+     * has not run yet. Called every frame by renderers that hand work to the EDT.
+     */
+    public void probeEventQueue() {
+        if (probePending)
+            return;
+        probePending = true;
+        probePosted = System.nanoTime();
+        EventQueue.invokeLater(probe);
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server under
+     * ScreenDoggo:type=EngineMetrics, or with an id appended (such as
+     * ScreenDoggo:type=EngineMetrics,id=2) when other engines registered theirs first. Does
+     * nothing if these metrics are registered already. Failing to register only prints the
+     * error, the metrics are still collected.
+     */
+    public synchronized void register() {
+        if (mbeanName != null)
+            return;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name;
+            do {
+                int id = registrations.incrementAndGet();
+                name = new ObjectName(id == 1 ? MBEAN_NAME : MBEAN_NAME + ",id=" + id);
+            } while (server.isRegistered(name));
+            server.registerMBean(this, name);
+            mbeanName = name;
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return The name these metrics are registered under, or null if they are not
+     */
+    public synchronized ObjectName getMBeanName() {
+        return mbeanName;
+    }
+
+    /**
+     * Starts writing a line of the metrics of the last second to a CSV file every second,
+     * on a daemon thread. When the file grows past the given size it is moved to the same
+     * name ending in ".1", replacing the one before, and a new file is started.
+     * @param file The file to write to
+     * @param maxBytes The size at which the file is rolled over
+     */
+    public synchronized void startCsv(File file, long maxBytes) {
+        if (csvWriter != null)
+            return;
+        csvWriter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Metrics-CSV");
+            thread.setDaemon(true);
+            return thread;
+        });
+        csvWriter.scheduleAtFixedRate(new CsvWriter(file, maxBytes), 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops writing the CSV file.
+     */
+    public synchronized void stopCsv() {
+        if (csvWriter != null)
+            csvWriter.shutdown();
+        csvWriter = null;
+    }
+
+    @Override
+    public int getTicksPerSecond() {
+        return ticksPerSecond;
+    }
+
+    @Override
+    public int getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    @Override
+    public double getCpuUsage() {
+        return cpuUsage;
+    }
+
+    @Override
+    public long getTicks() {
+        return ticks;
+    }
+
+    @Override
+    public long getCatchUpTicks() {
+        return catchUpTicks;
+    }
+
+    @Override
+    public long getFrames() {
+        return frames;
+    }
+
+    @Override
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    @Override
+    public double getTickMillisP50() {
+        return tickTimes.getPercentile(0.5) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getTickMillisP99() {
+        return tickTimes.getPercentile(0.99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getTickMillisMax() {
+        return tickTimes.getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getPaintMillisP50() {
+        return paintTimes.getPercentile(0.5) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getPaintMillisP99() {
+        return paintTimes.getPercentile(0.99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getPaintMillisMax() {
+        return paintTimes.getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getEventQueueLatencyMillisP50() {
+        return eventQueueTimes.getPercentile(0.5) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getEventQueueLatencyMillisP99() {
+        return eventQueueTimes.getPercentile(0.99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getEventQueueLatencyMillisMax() {
+        return eventQueueTimes.getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public void reset() {
+        // Counters written by the engine thread may miss a write made during the reset
+        ticks = 0;
+        catchUpTicks = 0;
+        frames = 0;
+        droppedFrames = 0;
+        tickTimes.reset();
+        paintTimes.reset();
+        eventQueueTimes.reset();
+    }
+
+    /**
+     * Writes the metrics of each interval, computing the percentiles from the difference of
+     * the histogram counts since the last line.
+     */
+    private class CsvWriter implements Runnable {
+
+        private final File file;
+        private final long maxBytes;
+        private final long[][] last = new long[3][LatencyHistogram.BUCKETS];
+        private final long[] counts = new long[LatencyHistogram.BUCKETS];
+        private long lastCatchUpTicks, lastDroppedFrames;
+
+        private CsvWriter(File file, long maxBytes) {
+            this.file = file;
+            this.maxBytes = maxBytes;
+            tickTimes.getCounts(last[0]);
+            paintTimes.getCounts(last[1]);
+            eventQueueTimes.getCounts(last[2]);
+            lastCatchUpTicks = catchUpTicks;
+            lastDroppedFrames = droppedFrames;
+        }
+
+        @Override
+        public void run() {
+            long catchUp = catchUpTicks, dropped = droppedFrames;
+            String line = String.format(Locale.ROOT, "%d,%d,%d,%.3f,%d,%d%s%s%s",
+                System.currentTimeMillis(), ticksPerSecond, framesPerSecond, cpuUsage,
+                getDelta(catchUp, lastCatchUpTicks), getDelta(dropped, lastDroppedFrames),
+                getPercentiles(tickTimes, last[0]), getPercentiles(paintTimes, last[1]),
+                getPercentiles(eventQueueTimes, last[2]));
+            lastCatchUpTicks = catchUp;
+            lastDroppedFrames = dropped;
+            try {
+                if (file.length() > maxBytes) {
+                    Files.move(file.toPath(), new File(file.getPath() + ".1").toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+                }
+                boolean header = !file.exists() || file.length() == 0;
+                try (BufferedWriter out = Files.newBufferedWriter(file.toPath(),
+                    StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND)) {
+                    if (header) {
+                        out.write(CSV_HEADER);
+                        out.newLine();
+                    }
+                    out.write(line);
+                    out.newLine();
+                }
+            } catch (IOException e) {
+                // A full disk or missing directory should not end the other metrics
+                e.printStackTrace();
+                stopCsv();
+            }
+        }
+
+        private long getDelta(long now, long before) {
+            return now >= before ? now - before : now;
+        }
+
+        /**
+         * Returns ",p50,p99" of what was recorded since the given counts and replaces them
+         * with the current counts.
+         */
+        private String getPercentiles(LatencyHistogram histogram, long[] since) {
+            histogram.getCounts(counts);
+            for (int i = 0; i < counts.length; i++) {
+                long now = counts[i];
+                // Less than before after a reset
+                counts[i] = now >= since[i] ? now - since[i] : now;
+                since[i] = now;
+            }
+            return String.format(Locale.ROOT, ",%.3f,%.3f",
+                LatencyHistogram.getPercentile(counts, 0.5) / NANOS_PER_MILLI,
+                LatencyHistogram.getPercentile(counts, 0.99) / NANOS_PER_MILLI);
+        }
+    }
+}
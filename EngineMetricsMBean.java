@@ -0,0 +1,69 @@
+/**
+ * The management interface of EngineMetrics, shown by JMX clients such as JConsole under
+ * ScreenDoggo:type=EngineMetrics. Durations are in milliseconds and cover everything since
+ * the last reset.
+ */
+public interface EngineMetricsMBean {
+
+    /**
+     * @return The ticks run in the last full second
+     */
+    int getTicksPerSecond();
+
+    /**
+     * @return The frames rendered in the last full second
+     */
+    int getFramesPerSecond();
+
+    /**
+     * @return The CPU time used by the engine thread in the last second, as a fraction of
+     * one core
+     */
+    double getCpuUsage();
+
+    /**
+     * @return The number of ticks run
+     */
+    long getTicks();
+
+    /**
+     * @return The number of ticks run right after another to catch up with the tick rate
+     */
+    long getCatchUpTicks();
+
+    /**
+     * @return The number of frames rendered
+     */
+    long getFrames();
+
+    /**
+     * @return The number of frames skipped because the engine was late for them
+     */
+    long getDroppedFrames();
+
+    double getTickMillisP50();
+
+    double getTickMillisP99();
+
+    double getTickMillisMax();
+
+    double getPaintMillisP50();
+
+    double getPaintMillisP99();
+
+    double getPaintMillisMax();
+
+    /**
+     * @return The median time a task posted to the EDT waited before it ran
+     */
+    double getEventQueueLatencyMillisP50();
+
+    double getEventQueueLatencyMillisP99();
+
+    double getEventQueueLatencyMillisMax();
+
+    /**
+     * Clears all counts and durations.
+     */
+    void reset();
+}
@@ -0,0 +1,435 @@
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Keeps many simple animated sprites (entities) as rows of primitive arrays instead of as
+ * AnimatedObjects, so a scene of thousands of them is ticked and drawn in tight loops over
+ * the arrays without a virtual call per entity. An entity shows a range of sprites from the
+ * sprite table of the store, one after another, and may follow a body of a MovementSystem.
+ * 
+ * Existing AnimatedObjects plug in through add(AnimatedObject), which adapts one to a row:
+ * the store animates it every tick and copies its bounds and image into the arrays, so it is
+ * drawn by the same loops. An adapted object must not also be added to the engine.
+ * 
+ * Entities are reached through handles that stay the same while rows are moved to keep the
+ * arrays dense. A handle packs the slot it is kept in with the generation of the slot, which
+ * changes whenever the slot is freed, so a handle that was never handed out or was removed
+ * is rejected with an IllegalArgumentException even once its slot is reused. Each entity
+ * also has an AnimatedObject view, from get(), which is what the entity is known as in a
+ * RenderSnapshot. Adding and removing rows is safe from any thread, the other methods are
+ * for the engine thread (or before the engine is started). The AnimationEngine ticks its
+ * EntityStore after its MovementSystem and captures the store into every RenderSnapshot.
+ */
+public class EntityStore implements TickSystem {
+
+    private static final int INITIAL_CAPACITY = 16;
+    // The low bits of a handle are its slot, the others the generation of the slot
+    private static final int SLOT_BITS = 20;
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+    private static final int MAX_GENERATION = Integer.MAX_VALUE >>> SLOT_BITS;
+
+    private final MovementSystem movement;
+    private BufferedImage[] sprites;
+    private int spriteCount;
+
+    // The columns, by row
+    private int[] xs, ys, widths, heights, spriteIds, states;
+    private int[] firstSprites, frameCounts, bodies, handlesByRow;
+    private float[] frameSeconds, ages;
+    private BufferedImage[] images;
+    private AnimatedObject[] objects, views;
+    private int size;
+    private boolean quiescent = true;
+
+    // The row and generation of each slot, and the slots free for reuse
+    private int[] rows, generations, freeSlots;
+    private int slotCount, freeCount;
+
+    /**
+     * Creates an empty EntityStore.
+     * @param movement The MovementSystem whose bodies entities may follow
+     */
+    public EntityStore(MovementSystem movement) {
+        this.movement = movement;
+        sprites = new BufferedImage[INITIAL_CAPACITY];
+        xs = ys = widths = heights = spriteIds = states = new int[0];
+        firstSprites = frameCounts = bodies = handlesByRow = new int[0];
+        frameSeconds = ages = new float[0];
+        images = new BufferedImage[0];
+        objects = views = new AnimatedObject[0];
+        rows = new int[INITIAL_CAPACITY];
+        generations = new int[INITIAL_CAPACITY];
+        freeSlots = new int[INITIAL_CAPACITY];
+        grow(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Adds sprites to the sprite table.
+     * @param added The sprites to add
+     * @return The sprite id of the first sprite added, the others follow it in order
+     */
+    public synchronized int addSprites(BufferedImage[] added) {
+        if (spriteCount + added.length > sprites.length)
+            sprites = Arrays.copyOf(sprites, Math.max(sprites.length * 2,
+                spriteCount + added.length));
+        System.arraycopy(added, 0, sprites, spriteCount, added.length);
+        spriteCount += added.length;
+        return spriteCount - added.length;
+    }
+
+    /**
+     * Adds an entity that shows a range of sprites in a loop.
+     * @param x The x coordinate of the entity
+     * @param y The y coordinate of the entity
+     * @param firstSprite The sprite id of the first sprite shown
+     * @param frameCount The number of sprites shown, from the first one
+     * @param FRAME_SECONDS How long each sprite is shown for
+     * @return The handle of the entity
+     * @throws IllegalArgumentException if the sprites are not in the sprite table or the
+     * frame time is not positive
+     */
+    public synchronized int add(int x, int y, int firstSprite, int frameCount,
+        final float FRAME_SECONDS) {
+        if (firstSprite < 0 || frameCount < 1 || firstSprite + frameCount > spriteCount)
+            throw new IllegalArgumentException("No sprites " + firstSprite + " to "
+                + (firstSprite + frameCount - 1) + " in a table of " + spriteCount);
+        if (!(FRAME_SECONDS > 0))
+            throw new IllegalArgumentException("Frame time must be positive: "
+                + FRAME_SECONDS);
+        int row = addRow();
+        BufferedImage sprite = sprites[firstSprite];
+        xs[row] = x;
+        ys[row] = y;
+        widths[row] = sprite.getWidth();
+        heights[row] = sprite.getHeight();
+        spriteIds[row] = firstSprite;
+        images[row] = sprite;
+        firstSprites[row] = firstSprite;
+        frameCounts[row] = frameCount;
+        frameSeconds[row] = FRAME_SECONDS;
+        views[row] = new Entity(handlesByRow[row]);
+        return handlesByRow[row];
+    }
+
+    /**
+     * Adds a row that animates an AnimatedObject and draws it with the entities.
+     * @param object The object to adapt
+     * @return The handle of the row
+     */
+    public synchronized int add(AnimatedObject object) {
+        int row = addRow();
+        objects[row] = object;
+        views[row] = object;
+        spriteIds[row] = -1;
+        sync(row, object);
+        return handlesByRow[row];
+    }
+
+    /**
+     * @throws IllegalStateException if every slot for a handle is in use
+     */
+    private int addRow() {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slotCount > SLOT_MASK)
+                throw new IllegalStateException("No more than " + (SLOT_MASK + 1)
+                    + " entities");
+            if (slotCount == rows.length) {
+                rows = Arrays.copyOf(rows, rows.length * 2);
+                generations = Arrays.copyOf(generations, generations.length * 2);
+                freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+            }
+            slot = slotCount++;
+        }
+        if (size == xs.length)
+            grow(size * 2);
+        int row = size++;
+        rows[slot] = row;
+        handlesByRow[row] = generations[slot] << SLOT_BITS | slot;
+        states[row] = 0;
+        bodies[row] = -1;
+        ages[row] = 0;
+        objects[row] = null;
+        return row;
+    }
+
+    private void grow(int capacity) {
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        widths = Arrays.copyOf(widths, capacity);
+        heights = Arrays.copyOf(heights, capacity);
+        spriteIds = Arrays.copyOf(spriteIds, capacity);
+        states = Arrays.copyOf(states, capacity);
+        firstSprites = Arrays.copyOf(firstSprites, capacity);
+        frameCounts = Arrays.copyOf(frameCounts, capacity);
+        bodies = Arrays.copyOf(bodies, capacity);
+        handlesByRow = Arrays.copyOf(handlesByRow, capacity);
+        frameSeconds = Arrays.copyOf(frameSeconds, capacity);
+        ages = Arrays.copyOf(ages, capacity);
+        images = Arrays.copyOf(images, capacity);
+        objects = Arrays.copyOf(objects, capacity);
+        views = Arrays.copyOf(views, capacity);
+    }
+
+    /**
+     * Removes an entity or adapted object. The last row is moved into its place, so the
+     * handles of other rows stay valid. The handle is rejected from then on, as is the view
+     * of the removed row. A MovementSystem body the entity followed is left as it is.
+     * @param handle The handle of the row to remove
+     * @throws IllegalArgumentException if there is no row with the handle
+     */
+    public synchronized void remove(int handle) {
+        int row = getRow(handle);
+        if (views[row] instanceof Entity)
+            ((Entity) views[row]).handle = -1;
+        int last = --size;
+        if (row != last) {
+            xs[row] = xs[last];
+            ys[row] = ys[last];
+            widths[row] = widths[last];
+            heights[row] = heights[last];
+            spriteIds[row] = spriteIds[last];
+            states[row] = states[last];
+            firstSprites[row] = firstSprites[last];
+            frameCounts[row] = frameCounts[last];
+            bodies[row] = bodies[last];
+            frameSeconds[row] = frameSeconds[last];
+            ages[row] = ages[last];
+            images[row] = images[last];
+            objects[row] = objects[last];
+            views[row] = views[last];
+            handlesByRow[row] = handlesByRow[last];
+            rows[handlesByRow[row] & SLOT_MASK] = row;
+        }
+        images[last] = null;
+        objects[last] = null;
+        views[last] = null;
+        int slot = handle & SLOT_MASK;
+        rows[slot] = -1;
+        generations[slot] = generations[slot] == MAX_GENERATION ? 0 : generations[slot] + 1;
+        freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * Returns the row of a handle.
+     * @param handle The handle of the row
+     * @return The index of the row in the arrays
+     * @throws IllegalArgumentException if there is no row with the handle, because it was
+     * never handed out or was removed
+     */
+    private int getRow(int handle) {
+        int slot = handle & SLOT_MASK;
+        int row = handle >= 0 && slot < slotCount
+            && generations[slot] == handle >>> SLOT_BITS ? rows[slot] : -1;
+        if (row < 0)
+            throw new IllegalArgumentException("No entity with handle " + handle);
+        return row;
+    }
+
+    /**
+     * Advances the sprites of the entities, moves those that follow a body to it, and
+     * animates the adapted objects.
+     * @param seconds The length of the tick in seconds
+     */
+    @Override
+    public synchronized void tick(float seconds) {
+        boolean quiescent = true;
+        for (int i = 0; i < size; i++) {
+            AnimatedObject object = objects[i];
+            if (object != null) {
+                object.animate();
+                sync(i, object);
+                quiescent &= object.isQuiescent();
+                continue;
+            }
+            quiescent = false;
+            // The age within the current sprite, which is kept short of the frame time
+            float age = ages[i] + seconds;
+            if (age >= frameSeconds[i]) {
+                int sprite = spriteIds[i];
+                do {
+                    age -= frameSeconds[i];
+                    sprite = sprite + 1 == firstSprites[i] + frameCounts[i] ? firstSprites[i]
+                        : sprite + 1;
+                } while (age >= frameSeconds[i]);
+                BufferedImage image = sprites[sprite];
+                spriteIds[i] = sprite;
+                images[i] = image;
+                widths[i] = image.getWidth();
+                heights[i] = image.getHeight();
+            }
+            ages[i] = age;
+            int body = bodies[i];
+            if (body >= 0) {
+                xs[i] = Math.round(movement.getX(body));
+                ys[i] = Math.round(movement.getY(body));
+            }
+        }
+        this.quiescent = quiescent;
+    }
+
+    private void sync(int row, AnimatedObject object) {
+        xs[row] = object.getX();
+        ys[row] = object.getY();
+        widths[row] = object.getWidth();
+        heights[row] = object.getHeight();
+        images[row] = object.getImage();
+    }
+
+    /**
+     * Copies the rows into the arrays of a RenderSnapshot, as many as fit.
+     * @return The number of rows copied
+     */
+    synchronized int copyTo(int offset, AnimatedObject[] toViews, int[] toXs, int[] toYs,
+        int[] toWidths, int[] toHeights, BufferedImage[] toImages) {
+        // Rows added since the snapshot was sized are captured by the next one
+        int count = Math.min(size, toXs.length - offset);
+        System.arraycopy(views, 0, toViews, offset, count);
+        System.arraycopy(xs, 0, toXs, offset, count);
+        System.arraycopy(ys, 0, toYs, offset, count);
+        System.arraycopy(widths, 0, toWidths, offset, count);
+        System.arraycopy(heights, 0, toHeights, offset, count);
+        System.arraycopy(images, 0, toImages, offset, count);
+        return count;
+    }
+
+    /**
+     * Returns if the rows had nothing to animate in the last tick, which is when there were
+     * no entities and every adapted object was quiescent.
+     * @return true if the store can be ticked less often, false otherwise
+     */
+    public boolean isQuiescent() {
+        return quiescent;
+    }
+
+    /**
+     * @return The number of entities and adapted objects
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the AnimatedObject an entity is drawn as, or the adapted object itself.
+     * @param handle The handle of the row
+     * @return The view of the row
+     */
+    public AnimatedObject get(int handle) {
+        return views[getRow(handle)];
+    }
+
+    /**
+     * Makes an entity follow a body of the MovementSystem, or stop following one.
+     * @param handle The handle of the entity
+     * @param body The body to follow, -1 for none
+     */
+    public void setBody(int handle, int body) {
+        bodies[getRow(handle)] = body;
+    }
+
+    /**
+     * Moves an entity. Entities that follow a body are moved back to it every tick.
+     * @param handle The handle of the entity
+     * @param x The new x coordinate
+     * @param y The new y coordinate
+     */
+    public void setLocation(int handle, int x, int y) {
+        int row = getRow(handle);
+        xs[row] = x;
+        ys[row] = y;
+    }
+
+    /**
+     * @param handle The handle of the row
+     * @return The x coordinate of the row
+     */
+    public int getX(int handle) {
+        return xs[getRow(handle)];
+    }
+
+    /**
+     * @param handle The handle of the row
+     * @return The y coordinate of the row
+     */
+    public int getY(int handle) {
+        return ys[getRow(handle)];
+    }
+
+    /**
+     * @param handle The handle of the row
+     * @return The sprite id of the sprite shown, -1 for an adapted object
+     */
+    public int getSpriteId(int handle) {
+        return spriteIds[getRow(handle)];
+    }
+
+    /**
+     * Sets a number the owner of an entity keeps with it, such as the step of an event it
+     * is in. The store does not use it.
+     * @param handle The handle of the row
+     * @param state The state of the row
+     */
+    public void setState(int handle, int state) {
+        states[getRow(handle)] = state;
+    }
+
+    /**
+     * @param handle The handle of the row
+     * @return The state of the row, 0 until set
+     */
+    public int getState(int handle) {
+        return states[getRow(handle)];
+    }
+
+    /**
+     * An entity seen as an AnimatedObject, reading the row of its handle. It is animated by
+     * the store, not by the engine.
+     */
+    private class Entity implements AnimatedObject {
+
+        // -1 once removed
+        private int handle;
+
+        private Entity(int handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        public int getX() {
+            return xs[getRow(handle)];
+        }
+
+        @Override
+        public int getY() {
+            return ys[getRow(handle)];
+        }
+
+        @Override
+        public int getWidth() {
+            return widths[getRow(handle)];
+        }
+
+        @Override
+        public int getHeight() {
+            return heights[getRow(handle)];
+        }
+
+        @Override
+        public BufferedImage getImage() {
+            return images[getRow(handle)];
+        }
+
+        @Override
+        public void animate() {
+            // Animated by the store
+        }
+
+        @Override
+        public boolean intersects(AnimatedObject obj) {
+            return SpatialGrid.intersects(getX(), getY(), getWidth(), getHeight(), obj.getX(),
+                obj.getY(), obj.getWidth(), obj.getHeight());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Collects the time between presented frames, to compare the pacing and jitter of rendering
+ * paths. Safe to use from multiple threads.
+ */
+public class FrameStats {
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private long lastFrame;
+    private int intervals;
+    private double sum;
+    private double sumSquares;
+    private long max;
+
+    /**
+     * Creates FrameStats that have not seen a frame.
+     */
+    public FrameStats() {
+        reset();
+    }
+
+    /**
+     * Records that a frame was presented now.
+     */
+    public synchronized void frame() {
+        long now = System.nanoTime();
+        if (lastFrame != 0) {
+            long interval = now - lastFrame;
+            intervals++;
+            sum += interval;
+            sumSquares += (double) interval * interval;
+            if (interval > max)
+                max = interval;
+        }
+        lastFrame = now;
+    }
+
+    /**
+     * Clears the collected intervals. The next frame is still measured from the last one.
+     */
+    public synchronized void reset() {
+        intervals = 0;
+        sum = 0;
+        sumSquares = 0;
+        max = 0;
+    }
+
+    /**
+     * Returns the number of frame intervals recorded since the last reset.
+     * @return The number of intervals
+     */
+    public synchronized int getFrames() {
+        return intervals;
+    }
+
+    /**
+     * Returns the mean time between frames since the last reset.
+     * @return The mean frame time in milliseconds, or 0 if there were no intervals
+     */
+    public synchronized double getMeanMillis() {
+        if (intervals == 0)
+            return 0;
+        return sum / intervals / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Returns the standard deviation of the time between frames since the last reset, which
+     * is how much the frame time jitters.
+     * @return The jitter in milliseconds, or 0 if there were no intervals
+     */
+    public synchronized double getJitterMillis() {
+        if (intervals == 0)
+            return 0;
+        double mean = sum / intervals;
+        double variance = Math.max(0, sumSquares / intervals - mean * mean);
+        return Math.sqrt(variance) / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Returns the longest time between two frames since the last reset.
+     * @return The longest frame time in milliseconds
+     */
+    public synchronized double getMaxMillis() {
+        return max / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Frames: %d mean: %.2f ms jitter: %.2f ms max: %.2f ms", intervals,
+            getMeanMillis(), getJitterMillis(), getMaxMillis());
+    }
+}
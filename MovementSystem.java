@@ -0,0 +1,314 @@
+import java.util.Arrays;
+
+/**
+ * Moves bodies with sub-pixel float positions, velocities and accelerations, steering each
+ * towards or away from a target. Bodies are indices into parallel arrays (structure of
+ * arrays), and a tick first computes the velocity every body wants in one loop, then
+ * accelerates and moves all bodies in a second loop without any branches on the kind of
+ * steering, so the JIT can vectorize it.
+ * 
+ * Speeds are in pixels per second and accelerations in pixels per second squared, so bodies
+ * move alike whatever the tick rate. The AnimationEngine ticks its MovementSystem before
+ * animating its objects, which read their positions and steer for the next tick. Bodies are
+ * added with add(), which may be called from any thread, the other methods are for the
+ * engine thread (or before the engine is started). A removed body stays in the arrays at rest
+ * until add() reuses its index, so the indices of the other bodies never change.
+ */
+public class MovementSystem implements TickSystem {
+
+    /**
+     * How a body steers.
+     * NONE keeps the body where it is.
+     * SEEK heads for the target at full speed, overshooting it.
+     * ARRIVE heads for the target and slows down within the radius, stopping on it.
+     * WANDER heads in a direction that slowly turns at random, ignoring the target.
+     * FLEE runs from the target while closer than the radius and slows to a stop otherwise.
+     */
+    public enum Steering {
+        NONE, SEEK, ARRIVE, WANDER, FLEE;
+    }
+
+    private static final Steering[] STEERINGS = Steering.values();
+    private static final float DEFAULT_MAX_SPEED = 120;
+    private static final float DEFAULT_MAX_ACCELERATION = 1200;
+    private static final float DEFAULT_RADIUS = 64;
+    /**
+     * The most the direction of a wandering body turns per second, in radians.
+     */
+    private static final float WANDER_TURN = 4;
+
+    private float[] xs, ys, velXs, velYs, desiredXs, desiredYs;
+    private float[] targetXs, targetYs, maxSpeeds, maxAccelerations, radii, headings;
+    private byte[] steerings;
+    private boolean[] removed;
+    // The indices of removed bodies, reused by add()
+    private int[] freeBodies;
+    private int freeCount;
+    private int size;
+    private int seed;
+
+    /**
+     * Creates a MovementSystem without bodies.
+     */
+    public MovementSystem() {
+        xs = ys = velXs = velYs = desiredXs = desiredYs = new float[0];
+        targetXs = targetYs = maxSpeeds = maxAccelerations = radii = headings = new float[0];
+        steerings = new byte[0];
+        removed = new boolean[0];
+        freeBodies = new int[0];
+        freeCount = 0;
+        size = 0;
+        seed = 0x2545F491;
+    }
+
+    /**
+     * Adds a body at rest that does not steer, with a maximum speed of 120 pixels per second,
+     * maximum acceleration of 1200 pixels per second squared and a radius of 64 pixels. The
+     * index of a removed body is reused first.
+     * @param x The x coordinate of the body
+     * @param y The y coordinate of the body
+     * @return The index of the body
+     */
+    public synchronized int add(float x, float y) {
+        int body;
+        if (freeCount > 0) {
+            body = freeBodies[--freeCount];
+            removed[body] = false;
+        } else {
+            if (size == xs.length)
+                grow(Math.max(16, size * 2));
+            body = size++;
+        }
+        xs[body] = x;
+        ys[body] = y;
+        velXs[body] = 0;
+        velYs[body] = 0;
+        targetXs[body] = x;
+        targetYs[body] = y;
+        maxSpeeds[body] = DEFAULT_MAX_SPEED;
+        maxAccelerations[body] = DEFAULT_MAX_ACCELERATION;
+        radii[body] = DEFAULT_RADIUS;
+        headings[body] = body;
+        steerings[body] = (byte) Steering.NONE.ordinal();
+        return body;
+    }
+
+    private void grow(int capacity) {
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        velXs = Arrays.copyOf(velXs, capacity);
+        velYs = Arrays.copyOf(velYs, capacity);
+        desiredXs = Arrays.copyOf(desiredXs, capacity);
+        desiredYs = Arrays.copyOf(desiredYs, capacity);
+        targetXs = Arrays.copyOf(targetXs, capacity);
+        targetYs = Arrays.copyOf(targetYs, capacity);
+        maxSpeeds = Arrays.copyOf(maxSpeeds, capacity);
+        maxAccelerations = Arrays.copyOf(maxAccelerations, capacity);
+        radii = Arrays.copyOf(radii, capacity);
+        headings = Arrays.copyOf(headings, capacity);
+        steerings = Arrays.copyOf(steerings, capacity);
+        removed = Arrays.copyOf(removed, capacity);
+        freeBodies = Arrays.copyOf(freeBodies, capacity);
+    }
+
+    /**
+     * Removes a body, which stops where it is and no longer steers. Its index may be
+     * returned by a later add(), so it must not be used afterwards.
+     * @param body The index of the body
+     * @throws IllegalArgumentException if there is no body at the index or it was removed
+     */
+    public synchronized void remove(int body) {
+        if (body < 0 || body >= size || removed[body])
+            throw new IllegalArgumentException("No body at index " + body);
+        removed[body] = true;
+        steerings[body] = (byte) Steering.NONE.ordinal();
+        velXs[body] = 0;
+        velYs[body] = 0;
+        freeBodies[freeCount++] = body;
+    }
+
+    /**
+     * Moves every body by one tick.
+     * @param seconds The length of the tick in seconds
+     */
+    @Override
+    public synchronized void tick(float seconds) {
+        steer(seconds);
+        move(seconds);
+    }
+
+    /**
+     * Computes the velocity every body wants.
+     */
+    private void steer(float seconds) {
+        for (int i = 0; i < size; i++) {
+            float dx = targetXs[i] - xs[i];
+            float dy = targetYs[i] - ys[i];
+            float distance = (float) Math.sqrt(dx * dx + dy * dy);
+            float speed = maxSpeeds[i];
+            // The direction to the target, or none when on it
+            float scale = distance > 0 ? 1 / distance : 0;
+            switch (STEERINGS[steerings[i]]) {
+                case SEEK:
+                    break;
+                case ARRIVE:
+                    speed *= Math.min(1, distance / radii[i]);
+                    break;
+                case FLEE:
+                    scale = distance < radii[i] ? -scale : 0;
+                    break;
+                case WANDER:
+                    headings[i] += (nextFloat() * 2 - 1) * WANDER_TURN * seconds;
+                    dx = (float) Math.cos(headings[i]);
+                    dy = (float) Math.sin(headings[i]);
+                    scale = 1;
+                    break;
+                default:
+                    speed = 0;
+                    break;
+            }
+            desiredXs[i] = dx * scale * speed;
+            desiredYs[i] = dy * scale * speed;
+        }
+    }
+
+    /**
+     * Accelerates every body towards the velocity it wants and moves it.
+     */
+    private void move(float seconds) {
+        for (int i = 0; i < size; i++) {
+            float steerX = desiredXs[i] - velXs[i];
+            float steerY = desiredYs[i] - velYs[i];
+            float steer = (float) Math.sqrt(steerX * steerX + steerY * steerY);
+            float maxSteer = maxAccelerations[i] * seconds;
+            // Limits the change of velocity to the maximum acceleration
+            float limit = steer > maxSteer ? maxSteer / steer : 1;
+            velXs[i] += steerX * limit;
+            velYs[i] += steerY * limit;
+            xs[i] += velXs[i] * seconds;
+            ys[i] += velYs[i] * seconds;
+        }
+    }
+
+    private float nextFloat() {
+        // xorshift, which unlike Random allocates nothing and is not synchronized
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return (seed >>> 8) / (float) (1 << 24);
+    }
+
+    /**
+     * @return The number of bodies, including removed bodies that have not been reused
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sets how a body steers.
+     * @param body The index of the body
+     * @param steering The steering behaviour
+     */
+    public void setSteering(int body, Steering steering) {
+        steerings[body] = (byte) steering.ordinal();
+    }
+
+    /**
+     * @param body The index of the body
+     * @return How the body steers
+     */
+    public Steering getSteering(int body) {
+        return STEERINGS[steerings[body]];
+    }
+
+    /**
+     * Sets the point the body steers towards or away from.
+     * @param body The index of the body
+     * @param x The x coordinate of the target
+     * @param y The y coordinate of the target
+     */
+    public void setTarget(int body, float x, float y) {
+        targetXs[body] = x;
+        targetYs[body] = y;
+    }
+
+    /**
+     * @param body The index of the body
+     * @param speed The fastest the body moves, in pixels per second
+     */
+    public void setMaxSpeed(int body, float speed) {
+        maxSpeeds[body] = speed;
+    }
+
+    /**
+     * @param body The index of the body
+     * @param acceleration The most the speed of the body changes, in pixels per second
+     * squared
+     */
+    public void setMaxAcceleration(int body, float acceleration) {
+        maxAccelerations[body] = acceleration;
+    }
+
+    /**
+     * Sets the distance from the target within which an arriving body slows down and beyond
+     * which a fleeing body stops fleeing.
+     * @param body The index of the body
+     * @param radius The radius in pixels
+     */
+    public void setRadius(int body, float radius) {
+        radii[body] = radius;
+    }
+
+    /**
+     * Moves a body without steering it there.
+     * @param body The index of the body
+     * @param x The new x coordinate
+     * @param y The new y coordinate
+     */
+    public void setLocation(int body, float x, float y) {
+        xs[body] = x;
+        ys[body] = y;
+    }
+
+    /**
+     * Stops a body at once, without decelerating.
+     * @param body The index of the body
+     */
+    public void halt(int body) {
+        velXs[body] = 0;
+        velYs[body] = 0;
+    }
+
+    /**
+     * @param body The index of the body
+     * @return The x coordinate of the body
+     */
+    public float getX(int body) {
+        return xs[body];
+    }
+
+    /**
+     * @param body The index of the body
+     * @return The y coordinate of the body
+     */
+    public float getY(int body) {
+        return ys[body];
+    }
+
+    /**
+     * @param body The index of the body
+     * @return The horizontal velocity of the body in pixels per second
+     */
+    public float getVelocityX(int body) {
+        return velXs[body];
+    }
+
+    /**
+     * @param body The index of the body
+     * @return The vertical velocity of the body in pixels per second
+     */
+    public float getVelocityY(int body) {
+        return velYs[body];
+    }
+}
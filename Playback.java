@@ -0,0 +1,61 @@
+/**
+ * The engine behind a BiClip that actually plays its audio. A Playback is created unopened,
+ * is opened once, and cannot be used again after it is closed unless the implementation
+ * says otherwise.
+ */
+public interface Playback {
+
+    /**
+     * Obtains the system resources needed to play.
+     * @return true if the playback is open and ready to start, false if it could not open
+     */
+    public boolean open();
+
+    /**
+     * Starts or resumes playing from the current position.
+     */
+    public void start();
+
+    /**
+     * Plays from the current position, then repeats the audio a number of times.
+     * @param loops The number of times to repeat, zero plays the audio once, and
+     * Clip.LOOP_CONTINUOUSLY repeats until closed.
+     */
+    public void loop(int loops);
+
+    /**
+     * Pauses playing, keeping the current position.
+     */
+    public void stop();
+
+    /**
+     * Stops playing and releases all system resources.
+     */
+    public void close();
+
+    public boolean isOpen();
+
+    public boolean isRunning();
+
+    public boolean isActive();
+
+    /**
+     * Returns if the audio played through to its end.
+     * @return true if the playback is done, false otherwise
+     */
+    public boolean isDone();
+
+    public void setMute(boolean mute);
+
+    /**
+     * Sets the MASTER_GAIN of the line.
+     * @param gain The gain in decibels
+     */
+    public void setGain(float gain);
+
+    /**
+     * Returns the number of bytes of audio data this playback currently holds in memory.
+     * @return The resident audio bytes
+     */
+    public long getResidentBytes();
+}
@@ -0,0 +1,189 @@
+import java.awt.HeadlessException;
+import java.awt.MouseInfo;
+import java.awt.Point;
+import java.awt.PointerInfo;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The location and velocity of the pointer, shared by every object so they read plain ints
+ * instead of each calling MouseInfo.getPointerInfo() (a native call that allocates) every
+ * tick.
+ * 
+ * The AnimationEngine expires the location once per loop, at most at the rate set by
+ * -Ddoggo.pointerHz (every loop by default), and the first read after that polls
+ * MouseInfo. Nothing is polled while no object reads the pointer, and the catch-up ticks of
+ * a loop share one poll. Pointer events over the panel update the location through update()
+ * and spare the poll.
+ * 
+ * The location is packed into one volatile long so it is read without locking and never
+ * torn, see getPosition(). When there is no pointer (headless) or sampling is disabled, the
+ * location only changes through update() and set().
+ */
+public class PointerSampler {
+
+    private static final double NANOS_PER_SECOND = 1000000000;
+
+    private final long intervalNanos;
+    private final AtomicBoolean stale = new AtomicBoolean();
+    private volatile boolean sampling;
+    private volatile long position;
+    private volatile long velocity;
+    private volatile long sampleNanos;
+    private long expireNanos;
+    private int polls;
+
+    /**
+     * Creates a sampler at (0, 0) that samples the system pointer at most at the rate
+     * set by -Ddoggo.pointerHz, or every loop of the engine when it is not set.
+     */
+    public PointerSampler() {
+        this(Integer.getInteger("doggo.pointerHz", 0));
+    }
+
+    /**
+     * Creates a sampler at (0, 0) that samples the system pointer at most at the given rate.
+     * @param RATE The samples per second, 0 or less to sample every loop of the engine
+     */
+    public PointerSampler(final int RATE) {
+        intervalNanos = RATE > 0 ? (long) (NANOS_PER_SECOND / RATE) : 0;
+        sampling = true;
+        sampleNanos = System.nanoTime();
+    }
+
+    /**
+     * Marks the location as out of date so the next read polls the system pointer, unless
+     * the last expiry was less than the sample interval ago. Called by the engine thread.
+     * @param now The current System.nanoTime()
+     */
+    void expire(long now) {
+        if (now - expireNanos >= intervalNanos) {
+            expireNanos = now;
+            stale.set(true);
+        }
+    }
+
+    /**
+     * Sets the location from a pointer event, sparing the poll of the next read.
+     * @param x The x coordinate of the pointer on screen
+     * @param y The y coordinate of the pointer on screen
+     */
+    public void update(int x, int y) {
+        stale.set(false);
+        store(x, y);
+    }
+
+    /**
+     * Sets the location, for running without a system pointer.
+     * @param x The x coordinate of the pointer
+     * @param y The y coordinate of the pointer
+     */
+    public void set(int x, int y) {
+        store(x, y);
+    }
+
+    /**
+     * Sets whether the system pointer is polled. When not, the location only changes
+     * through update() and set().
+     * @param sampling true to poll the system pointer, false otherwise
+     */
+    public void setSampling(boolean sampling) {
+        this.sampling = sampling;
+    }
+
+    /**
+     * Returns the location packed into a long, so both coordinates come from the same
+     * sample. Unpacked by getX(long) and getY(long).
+     * @return The packed location of the pointer
+     */
+    public long getPosition() {
+        // Only the reader that takes the expiry polls
+        if (stale.get() && stale.compareAndSet(true, false))
+            poll();
+        return position;
+    }
+
+    /**
+     * @return The x coordinate of the pointer
+     */
+    public int getX() {
+        return getX(getPosition());
+    }
+
+    /**
+     * @return The y coordinate of the pointer
+     */
+    public int getY() {
+        return getY(getPosition());
+    }
+
+    /**
+     * @param position A location from getPosition()
+     * @return The x coordinate of the location
+     */
+    public static int getX(long position) {
+        return (int) (position >> 32);
+    }
+
+    /**
+     * @param position A location from getPosition()
+     * @return The y coordinate of the location
+     */
+    public static int getY(long position) {
+        return (int) position;
+    }
+
+    /**
+     * @return The horizontal velocity of the pointer between the last two samples, in
+     * pixels per second
+     */
+    public float getVelocityX() {
+        return Float.intBitsToFloat((int) (velocity >> 32));
+    }
+
+    /**
+     * @return The vertical velocity of the pointer between the last two samples, in
+     * pixels per second
+     */
+    public float getVelocityY() {
+        return Float.intBitsToFloat((int) velocity);
+    }
+
+    /**
+     * @return The number of times the system pointer has been polled
+     */
+    public int getPolls() {
+        return polls;
+    }
+
+    private void poll() {
+        if (!sampling)
+            return;
+        try {
+            PointerInfo pointer = MouseInfo.getPointerInfo();
+            // null when the pointer is on no known screen
+            if (pointer != null) {
+                Point location = pointer.getLocation();
+                polls++;
+                store(location.x, location.y);
+            }
+        } catch (HeadlessException e) {
+            sampling = false;
+        }
+    }
+
+    private void store(int x, int y) {
+        // Writers racing (events and polls) may pair a velocity with the other's location,
+        // the last write wins either way
+        long now = System.nanoTime();
+        long last = position;
+        long elapsed = now - sampleNanos;
+        if (elapsed > 0) {
+            float velX = (float) ((x - getX(last)) * NANOS_PER_SECOND / elapsed);
+            float velY = (float) ((y - getY(last)) * NANOS_PER_SECOND / elapsed);
+            velocity = (long) Float.floatToRawIntBits(velX) << 32
+                | Float.floatToRawIntBits(velY) & 0xFFFFFFFFL;
+        }
+        sampleNanos = now;
+        position = (long) x << 32 | y & 0xFFFFFFFFL;
+    }
+}
@@ -0,0 +1,206 @@
+import java.awt.image.BufferedImage;
+
+/**
+ * The location, size and image of every AnimatedObject as of one tick, captured on the
+ * engine thread so other threads can draw the tick without reading the objects while they
+ * are being animated.
+ * 
+ * The AnimationEngine captures into a snapshot only it holds and then swaps it with the one
+ * it published last (see AnimationEngine#getRenderSnapshot()), so a published snapshot is
+ * never written while it can be read. The arrays are reused and only grow, so capturing
+ * allocates nothing once they are big enough.
+ * 
+ * An object showing a timed Animation is captured as its clip and start time rather than an
+ * image, and its frame is picked when the snapshot is painted (see getImageAt()), so timed
+ * animations play smoothly however rarely the engine ticks.
+ */
+public class RenderSnapshot {
+
+    private AnimatedObject[] objects;
+    private int[] xs, ys, widths, heights;
+    private BufferedImage[] images;
+    // The clip and start time of each timed object, null clips for the others
+    private AnimationClip[] clips;
+    private long[] starts;
+    private int objectCount;
+    private int size;
+    private long tick;
+
+    /**
+     * Creates an empty snapshot of no tick.
+     */
+    public RenderSnapshot() {
+        objects = new AnimatedObject[0];
+        xs = ys = widths = heights = new int[0];
+        images = new BufferedImage[0];
+        clips = new AnimationClip[0];
+        starts = new long[0];
+        objectCount = 0;
+        size = 0;
+        tick = 0;
+    }
+
+    /**
+     * Captures the objects as they are now.
+     * @param current The objects to capture
+     * @param tick The number of the tick captured, which only grows between captures
+     */
+    public void capture(AnimatedObject[] current, long tick) {
+        capture(current, null, tick);
+    }
+
+    /**
+     * Captures the objects as they are now, followed by the rows of an EntityStore, which
+     * are copied a column at a time.
+     * @param current The objects to capture
+     * @param entities The entities to capture after the objects, or null
+     * @param tick The number of the tick captured, which only grows between captures
+     */
+    public void capture(AnimatedObject[] current, EntityStore entities, long tick) {
+        int capacity = current.length + (entities != null ? entities.size() : 0);
+        if (capacity > objects.length)
+            grow(capacity);
+        for (int i = 0; i < current.length; i++) {
+            AnimatedObject obj = current[i];
+            objects[i] = obj;
+            xs[i] = obj.getX();
+            ys[i] = obj.getY();
+            widths[i] = obj.getWidth();
+            heights[i] = obj.getHeight();
+            Animation animation = obj.getTimedAnimation();
+            if (animation != null) {
+                clips[i] = animation.getClip();
+                starts[i] = animation.getStartNanos();
+                images[i] = null;
+            } else {
+                clips[i] = null;
+                images[i] = obj.getImage();
+            }
+        }
+        // Drops the clips of objects that were captured where entities are now
+        for (int i = current.length; i < objectCount; i++) {
+            clips[i] = null;
+        }
+        objectCount = current.length;
+        int captured = current.length;
+        if (entities != null)
+            captured += entities.copyTo(captured, objects, xs, ys, widths, heights, images);
+        // Drops the references to removed objects
+        for (int i = captured; i < size; i++) {
+            objects[i] = null;
+            images[i] = null;
+        }
+        size = captured;
+        this.tick = tick;
+    }
+
+    private void grow(int capacity) {
+        // Room for more objects so adding one at a time does not grow every tick
+        capacity += capacity >> 1;
+        AnimatedObject[] newObjects = new AnimatedObject[capacity];
+        BufferedImage[] newImages = new BufferedImage[capacity];
+        System.arraycopy(objects, 0, newObjects, 0, size);
+        System.arraycopy(images, 0, newImages, 0, size);
+        objects = newObjects;
+        images = newImages;
+        clips = new AnimationClip[capacity];
+        starts = new long[capacity];
+        xs = new int[capacity];
+        ys = new int[capacity];
+        widths = new int[capacity];
+        heights = new int[capacity];
+    }
+
+    /**
+     * @return The number of objects captured
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The number of the tick captured, 0 if none was
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * @param index The index of the object, less than size()
+     * @return The captured object (the view of an entity), for identifying it
+     */
+    public AnimatedObject getObject(int index) {
+        return objects[index];
+    }
+
+    /**
+     * @param index The index of the object, less than size()
+     * @return The x coordinate of the object
+     */
+    public int getX(int index) {
+        return xs[index];
+    }
+
+    /**
+     * @param index The index of the object, less than size()
+     * @return The y coordinate of the object
+     */
+    public int getY(int index) {
+        return ys[index];
+    }
+
+    /**
+     * @param index The index of the object, less than size()
+     * @return The width of the object
+     */
+    public int getWidth(int index) {
+        return widths[index];
+    }
+
+    /**
+     * @param index The index of the object, less than size()
+     * @return The height of the object
+     */
+    public int getHeight(int index) {
+        return heights[index];
+    }
+
+    /**
+     * @param index The index of the object, less than size()
+     * @return The image of the object, for a timed animation the frame it shows now
+     * @see #getImageAt(int, long)
+     */
+    public BufferedImage getImage(int index) {
+        return getImageAt(index, System.nanoTime());
+    }
+
+    /**
+     * Returns the image of an object at a time, which picks the frame of a timed animation.
+     * Painters read the time once and draw every object at it.
+     * @param index The index of the object, less than size()
+     * @param nanoTime The System.nanoTime() the image is shown at
+     * @return The image of the object
+     */
+    public BufferedImage getImageAt(int index, long nanoTime) {
+        AnimationClip clip = index < objectCount ? clips[index] : null;
+        return clip == null ? images[index] : clip.getFrameAt(starts[index], nanoTime);
+    }
+
+    /**
+     * Returns when the timed animation of an object next changes frame after a time, for
+     * scheduling a render when nothing ticked.
+     * @param nanoTime The System.nanoTime() to look from, such as when the last frame was
+     * rendered
+     * @return The System.nanoTime() of the next change, or Long.MAX_VALUE if no animation
+     * changes again
+     */
+    public long getNextFrameNanos(long nanoTime) {
+        long next = Long.MAX_VALUE;
+        for (int i = 0; i < objectCount; i++) {
+            AnimationClip clip = clips[i];
+            if (clip != null)
+                next = Math.min(next, clip.getNextFrameNanos(starts[i], nanoTime));
+        }
+        return next;
+    }
+}
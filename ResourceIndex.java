@@ -0,0 +1,213 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.NoSuchElementException;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * An index of every resource on a class path, built in a single pass over its directories
+ * and JAR files. Answers directory, extension and key lookups without touching the disk.
+ * 
+ * Resources in directories are named by their absolute path, resources in JAR files by
+ * their entry name.
+ */
+public class ResourceIndex {
+
+    private final ArrayList<String> resources;
+    private final HashMap<String, ArrayList<String>> directories;
+    private final HashMap<String, ArrayList<String>> extensions;
+    private final HashMap<String, String[]> keys;
+
+    /**
+     * Creates an empty ResourceIndex.
+     */
+    private ResourceIndex() {
+        resources = new ArrayList<>();
+        directories = new HashMap<>();
+        extensions = new HashMap<>();
+        keys = new HashMap<>();
+    }
+
+    /**
+     * Builds the index of a class path, which may hold several directories and JAR files
+     * separated by File.pathSeparator.
+     * @param classPath The class path to index
+     * @return The built ResourceIndex
+     */
+    public static ResourceIndex build(String classPath) {
+        ResourceIndex index = new ResourceIndex();
+        for (String path : classPath.split(File.pathSeparator)) {
+            if (path.isEmpty())
+                continue;
+            File file = new File(path);
+            if (file.isDirectory())
+                index.addDirectory(file);
+            else if (file.isFile() && path.endsWith(".jar"))
+                index.addJar(file);
+        }
+        return index;
+    }
+
+    /**
+     * Indexes the contents of a directory, recursively. A directory's contents are its
+     * direct children, including subdirectories. When several directories have the same
+     * name, the first one found is indexed under that name.
+     * @param dir The directory to index
+     */
+    private void addDirectory(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+        ArrayList<String> contents = new ArrayList<>(files.length);
+        boolean first = !directories.containsKey(dir.getName());
+        if (first)
+            directories.put(dir.getName(), contents);
+        for (File file : files) {
+            contents.add(file.getAbsolutePath());
+        }
+        for (File file : files) {
+            if (file.isDirectory())
+                addDirectory(file);
+            else
+                addResource(file.getAbsolutePath(), file.getName());
+        }
+    }
+
+    /**
+     * Indexes all file entries of a JAR. A directory's contents are all files below it,
+     * in any subdirectory. The entry names are read from the ResourceIndexCache if it is
+     * valid for the JAR, otherwise the JAR is enumerated and the cache rewritten.
+     * @param jarFile The JAR to index
+     */
+    private void addJar(File jarFile) {
+        String[] cached = ResourceIndexCache.load(jarFile);
+        if (cached != null) {
+            for (String name : cached) {
+                addJarEntry(name);
+            }
+            return;
+        }
+        ArrayList<String> names = new ArrayList<>();
+        try (JarFile jar = new JarFile(jarFile)) {
+            final Enumeration<JarEntry> ENTRIES = jar.entries();
+            while (ENTRIES.hasMoreElements()) {
+                JarEntry entry = ENTRIES.nextElement();
+                if (!entry.isDirectory()) {
+                    names.add(entry.getName());
+                    addJarEntry(entry.getName());
+                }
+            }
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        ResourceIndexCache.save(jarFile, names);
+    }
+
+    /**
+     * Indexes a file entry of a JAR under each of its parent directories.
+     * @param name The entry name
+     */
+    private void addJarEntry(String name) {
+        int end = name.lastIndexOf('/');
+        addResource(name, name.substring(end + 1));
+        while (end > 0) {
+            int start = name.lastIndexOf('/', end - 1);
+            String dir = name.substring(start + 1, end);
+            ArrayList<String> contents = directories.get(dir);
+            if (contents == null) {
+                contents = new ArrayList<>();
+                directories.put(dir, contents);
+            }
+            contents.add(name);
+            end = start;
+        }
+    }
+
+    /**
+     * Indexes a file resource by its extension.
+     * @param resource The resource name
+     * @param filename The name of the file, without its directories
+     */
+    private void addResource(String resource, String filename) {
+        resources.add(resource);
+        String ext = filename.substring(filename.lastIndexOf('.') + 1);
+        ArrayList<String> matches = extensions.get(ext);
+        if (matches == null) {
+            matches = new ArrayList<>();
+            extensions.put(ext, matches);
+        }
+        matches.add(resource);
+    }
+
+    /**
+     * Returns the contents of the directory with the given name.
+     * @param filename The name of the directory, matched exactly
+     * @return A new array of the directory's contents
+     * @throws NoSuchElementException if there is no directory with the name
+     */
+    public String[] getDirectory(String filename) {
+        ArrayList<String> contents = directories.get(filename);
+        if (contents == null)
+            throw new NoSuchElementException(
+                "There were no directories by the name of : " + filename);
+        return contents.toArray(new String[contents.size()]);
+    }
+
+    /**
+     * Returns the file resources whose name ends with the extension.
+     * @param ext The extension, with or without the dot, or any longer ending
+     * @return A new list of matching resources, empty if there were no matches
+     */
+    public ArrayList<String> getByExtension(String ext) {
+        ArrayList<String> matches = extensions.get(ext.substring(ext.lastIndexOf('.') + 1));
+        ArrayList<String> result = new ArrayList<>();
+        if (matches == null)
+            return result;
+        for (String resource : matches) {
+            if (resource.endsWith(ext))
+                result.add(resource);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the file resources whose file name contains the key. The first lookup of a key
+     * checks every resource, later lookups of the same key are answered from a cache.
+     * @param key The key to match
+     * @return A new list of matching resources, empty if there were no matches
+     */
+    public ArrayList<String> getByKey(String key) {
+        String[] matches;
+        synchronized (keys) {
+            matches = keys.get(key);
+            if (matches == null) {
+                ArrayList<String> found = new ArrayList<>();
+                for (String resource : resources) {
+                    int start = Math.max(resource.lastIndexOf('/'),
+                        resource.lastIndexOf(File.separatorChar));
+                    if (resource.indexOf(key, start + 1) >= 0)
+                        found.add(resource);
+                }
+                matches = found.toArray(new String[found.size()]);
+                keys.put(key, matches);
+            }
+        }
+        ArrayList<String> result = new ArrayList<>(matches.length);
+        for (String match : matches) {
+            result.add(match);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of file resources in the index.
+     * @return The number of indexed resources
+     */
+    public int size() {
+        return resources.size();
+    }
+}
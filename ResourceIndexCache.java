@@ -0,0 +1,166 @@
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Persists the entry names of a JAR in a compact binary file, so the ResourceIndex of the
+ * next launch can skip enumerating the JAR.
+ * 
+ * The cache is stored in the ".screendoggo" directory in the user's home (or the directory
+ * in the "doggo.cacheDir" system property), one file per JAR path. It is only used while
+ * the JAR has the same size, modification time and checksum of its first and last
+ * CHECKSUM_BYTES bytes, the last of which hold the JAR's central directory. A valid cache is
+ * memory-mapped rather than read through a stream.
+ * 
+ * Format: magic, version, JAR size, JAR modification time, checksum, entry count, then
+ * every entry name as its UTF-8 length and bytes.
+ */
+public class ResourceIndexCache {
+
+    private static final int MAGIC = 0x444F4747;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 8 + 4;
+    private static final int CHECKSUM_BYTES = 64 * 1024;
+
+    /**
+     * Returns the entry names cached for the JAR.
+     * @param jar The JAR file
+     * @return The cached entry names, or null if there is no valid cache for the JAR
+     */
+    public static String[] load(File jar) {
+        File cache = getCacheFile(jar);
+        if (!cache.isFile())
+            return null;
+        try {
+            long checksum = checksum(jar);
+            try (DataInputStream in = new DataInputStream(new FileInputStream(cache))) {
+                // Check the header before mapping, a mapped file cannot be replaced on Windows
+                if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || in.readLong() != jar.length() || in.readLong() != jar.lastModified()
+                    || in.readLong() != checksum)
+                    return null;
+            }
+            try (FileChannel channel = new RandomAccessFile(cache, "r").getChannel()) {
+                MappedByteBuffer buffer =
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                buffer.position(HEADER_BYTES - 4);
+                String[] names = new String[buffer.getInt()];
+                byte[] bytes = new byte[256];
+                for (int i = 0; i < names.length; i++) {
+                    int length = buffer.getInt();
+                    if (length > bytes.length)
+                        bytes = new byte[length];
+                    buffer.get(bytes, 0, length);
+                    names[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+                }
+                return names;
+            }
+        } catch (IOException | RuntimeException e) {
+            // A truncated or unreadable cache is rebuilt from the JAR
+            System.out.println("Ignoring resource index cache " + cache + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the entry names of the JAR to its cache file, replacing any previous cache.
+     * Failing to write the cache is reported but otherwise ignored.
+     * @param jar The JAR file
+     * @param names The entry names of the JAR
+     */
+    public static void save(File jar, List<String> names) {
+        File cache = getCacheFile(jar);
+        File temp = new File(cache.getPath() + ".tmp");
+        try {
+            long checksum = checksum(jar);
+            cache.getParentFile().mkdirs();
+            try (DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(jar.length());
+                out.writeLong(jar.lastModified());
+                out.writeLong(checksum);
+                out.writeInt(names.size());
+                for (String name : names) {
+                    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }
+            Files.move(temp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.out.println("Could not write resource index cache " + cache + ": " + e);
+            temp.delete();
+        }
+    }
+
+    /**
+     * Returns the cache file of a JAR, named after a hash of its absolute path.
+     * @param jar The JAR file
+     * @return The cache file, which may not exist
+     */
+    public static File getCacheFile(File jar) {
+        String dir = System.getProperty("doggo.cacheDir");
+        if (dir == null)
+            dir = System.getProperty("user.home") + File.separator + ".screendoggo";
+        CRC32 crc = new CRC32();
+        crc.update(jar.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+        return new File(dir, "resource-index-" + Long.toHexString(crc.getValue()) + ".bin");
+    }
+
+    /**
+     * Computes a CRC32 of the first and last CHECKSUM_BYTES of a file.
+     * @param file The file to check
+     * @return The checksum
+     * @throws IOException if the file could not be read
+     */
+    private static long checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            long size = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, CHECKSUM_BYTES));
+            readFully(channel, buffer, 0);
+            buffer.flip();
+            crc.update(buffer);
+            if (size > CHECKSUM_BYTES) {
+                buffer.clear();
+                readFully(channel, buffer, Math.max(CHECKSUM_BYTES, size - CHECKSUM_BYTES));
+                buffer.flip();
+                crc.update(buffer);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Reads from a channel until the buffer is full or the end of the file is reached,
+     * a single positional read may return fewer bytes than requested.
+     * @param channel The channel to read from
+     * @param buffer The buffer to fill
+     * @param position The file position to start reading at
+     * @throws IOException if the file could not be read
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                break;
+            position += read;
+        }
+    }
+}
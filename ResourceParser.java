@@ -1,14 +1,15 @@
+import java.awt.AlphaComposite;
 import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Enumeration;
+import java.util.Hashtable;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 import javax.imageio.ImageIO;
 
 /**
@@ -21,13 +22,34 @@ public class ResourceParser {
     private static final String classPath = System.getProperty("java.class.path");
 
     /**
-     * Searches class path for resources with the matching key. Not safe for use in
-     * jar files.
+     * Sprite arrays already loaded by getSprites(), keyed by sheet, sprite size and scale.
+     */
+    private static final Hashtable<String, BufferedImage[]> spriteCache =
+        new Hashtable<String, BufferedImage[]>();
+
+    private static ResourceIndex index;
+
+    /**
+     * Returns the index of all class path resources, building it on the first call. All
+     * class path lookups of ResourceParser are answered by this index.
+     * @return The ResourceIndex of the class path
+     */
+    public static synchronized ResourceIndex getIndex() {
+        if (index == null) {
+            long start = System.nanoTime();
+            index = ResourceIndex.build(classPath);
+            StartupTrace.record(StartupTrace.RESOURCE_INDEX, start);
+        }
+        return index;
+    }
+
+    /**
+     * Searches class path for resources with the matching key.
      * @param key The key that the resource name contains
      * @return An ArrayList of resources containing the key. If empty there were no matches
      */
     public static ArrayList<String> getResourcesByKey(String key) {
-        return getResourcesByKey(classPath, key);
+        return getIndex().getByKey(key);
     }
 
     /**
@@ -38,6 +60,8 @@ public class ResourceParser {
      * if there were no matches.
      */
     public static ArrayList<String> getResourcesByKey(String path, String key) {
+        if (path.equals(classPath))
+            return getResourcesByKey(key);
         ArrayList<String> resList = new ArrayList<>();
         resList.addAll(getResourcesByKeyHelper(path, key));
         return resList;
@@ -80,9 +104,10 @@ public class ResourceParser {
      * @param filename The name of the directory to find
      * @return A string array containing the filenames of the directories contents
      * @throws NoSuchElementException if the filename does not exist in the class path
+     * @see ResourceIndex#getDirectory(String)
      */
     public static String[] getResourcesFromFile(String filename) {
-        return getResourcesFromFileHelper(classPath, filename);
+        return getIndex().getDirectory(filename);
     }
 
     /**
@@ -100,113 +125,13 @@ public class ResourceParser {
         return resources;
     }
 
-    /**
-     * Private recursive helper method for getResourcesFromFile(). Checks each directory
-     * name for a match, and returns the matched directories contents. Note that this considers
-     * a special case for jar files.
-     * @param path The current file path
-     * @param filename The name of the directory to find
-     * @throws NoSuchElementException if the filename does not exist in the class path
-     * @return A String array of all resources in the given filename
-     */
-    private static String[] getResourcesFromFileHelper(String path, String filename) {
-        File file = new File(path);
-        if (isParsingJar()) {
-            if (file.isFile()) {  // Run with JAR file
-                JarFile jar = null;
-                try {
-                    ArrayList<String> files = new ArrayList<>(50);
-                    jar = new JarFile(file);
-                    final Enumeration<JarEntry> ENTRIES = jar.entries(); // gives ALL entries in jar
-                    while (ENTRIES.hasMoreElements()) {
-                        final String name = ENTRIES.nextElement().getName();
-                        if (name.contains(filename)) {
-                            char end = name.charAt(name.length() - 1);
-                            if (end != '\\' && end != '/' && end != File.separatorChar)
-                                files.add(name);
-                        }
-                    }
-                    return files.toArray(new String[files.size()]);
-                } catch (IOException e) {
-                    System.out.println(e.getMessage());
-                } finally {
-                    if (jar != null)
-                        try {
-                            jar.close();
-                        } catch (IOException e) {
-                            System.out.println(e.getMessage());
-                        }
-                }
-            }
-        } else {
-            if (file.isDirectory()) {
-                if (file.getName().equals(filename)) {
-                    return getAbsPathList(file.listFiles());
-                } else {
-                    File[] files = file.listFiles();
-                    for (int i = 0; i < files.length; i++) {
-                        if (files[i].isDirectory()) {
-                            try {
-                                return getResourcesFromFileHelper(files[i].getAbsolutePath(),
-                                    filename);
-                            } catch (NoSuchElementException e) {
-                                // Not done searching yet
-                            }
-                        }
-                    }
-                }
-            }
-        }
-        throw new NoSuchElementException("There were no directories by the name of : " + filename);
-    }
-
-    /**
-     * Gets a list of the absolute paths from a File Array
-     * @param listFiles The File array to get the absolute paths from
-     * @return A String array of all absolute file paths
-     */
-    private static String[] getAbsPathList(File[] listFiles) {
-        String[] pathArr = new String[listFiles.length];
-        for (int i = 0; i < pathArr.length; i++) {
-            pathArr[i] = listFiles[i].getAbsolutePath();
-        }
-        return pathArr;
-    }
-
     /**
      * Searches class path for resources with the matching extension
      * @param ext The file extension to match
      * @return An ArrayList of resource names matching the extension
      */
     public static ArrayList<String> getResourcesByExtension(String ext) {
-        ArrayList<String> resList = new ArrayList<>();
-        resList.addAll(getResourcesByExtensionHelper(classPath, ext));
-        return resList;
-    }
-
-    /**
-     * Private recursive method that checks all directories and files in the given path for
-     * the extension. Returns ArrayList of all matching resource names (as Strings).
-     * @param path The String path to the file.
-     * @param ext The String extension to match.
-     * @return An ArrayList containing all resources that had the correct extension, 
-     * or an empty ArrayList if there were no matches.
-     * 
-     */
-    private static ArrayList<String> getResourcesByExtensionHelper(String path, String ext) {
-        ArrayList<String> resList = new ArrayList<String>();
-        File file = new File(path);
-        if (file.isDirectory()) {
-            File[] files = file.listFiles();
-            for (int i = 0; i < files.length; i++) {
-                resList.addAll(getResourcesByKeyHelper(files[i].getAbsolutePath(), ext));
-            }
-        } else {
-            if (file.getName().endsWith(ext)) {
-                resList.add(file.getAbsolutePath());
-            }
-        }
-        return resList;
+        return getIndex().getByExtension(ext);
     }
 
     /**
@@ -303,13 +228,14 @@ public class ResourceParser {
     }
 
     /**
-     * Resizes an BufferedImage to a scaled image. Scales using a Raster that stores data on RGB and
-     * alpha value data.
+     * Resizes an BufferedImage to a scaled image. Scales into an image that is compatible
+     * with the screen and stores alpha values, so drawing it needs no conversion.
      * @param image The image to scale.
      * @param SCALE_FACTOR The coefficient to scale the image by. Negative numbers provide
      * decreases in size by given factor.
      * @return A resized image to the provided factor.
      * @throws IllegalArgumentException if SCALE_FACTOR is equal to zero.
+     * @see #createCompatibleImage(int, int)
      */
     public static BufferedImage resizeImage(BufferedImage image, final int SCALE_FACTOR) {
         if (SCALE_FACTOR == 0)
@@ -323,14 +249,87 @@ public class ResourceParser {
             SCALED_PIXELS_X = image.getWidth() / SCALE_FACTOR;
             SCALED_PIXELS_Y = image.getHeight() / SCALE_FACTOR;
         }
-        BufferedImage scaledImage =
-            new BufferedImage(SCALED_PIXELS_X, SCALED_PIXELS_Y, BufferedImage.TYPE_4BYTE_ABGR);
+        BufferedImage scaledImage = createCompatibleImage(SCALED_PIXELS_X, SCALED_PIXELS_Y);
         Graphics2D g2D = scaledImage.createGraphics();
+        g2D.setComposite(AlphaComposite.Src);
         g2D.drawImage(image, 0, 0, SCALED_PIXELS_X, SCALED_PIXELS_Y, null);
+        g2D.dispose();
 
         return scaledImage;
     }
 
+    /**
+     * Copies an image into a new image that is compatible with the screen, which also
+     * detaches sub images from the raster of their parent.
+     * @param image The image to copy
+     * @return A compatible copy of the image
+     * @see #createCompatibleImage(int, int)
+     */
+    public static BufferedImage toCompatibleImage(BufferedImage image) {
+        BufferedImage compatible = createCompatibleImage(image.getWidth(), image.getHeight());
+        Graphics2D g2D = compatible.createGraphics();
+        g2D.setComposite(AlphaComposite.Src);
+        g2D.drawImage(image, 0, 0, null);
+        g2D.dispose();
+        return compatible;
+    }
+
+    /**
+     * Creates a translucent image in the format of the default screen, so drawing it onto
+     * the screen can use the fastest (possibly accelerated) loops. When there is no screen
+     * a premultiplied ARGB image is created instead.
+     * @param width The width of the image
+     * @param height The height of the image
+     * @return A new, fully transparent image
+     * @see java.awt.GraphicsConfiguration#createCompatibleImage(int, int, int)
+     */
+    public static BufferedImage createCompatibleImage(int width, int height) {
+        if (GraphicsEnvironment.isHeadless())
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+            .getDefaultConfiguration()
+            .createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+    }
+
+    /**
+     * Loads a uniform sprite sheet resource into sprites that are scaled and compatible with
+     * the screen. Each sheet, sprite size and scale is only loaded once, later calls return
+     * the same array, so the returned array and its images must not be modified.
+     * @param filename The name of the sprite sheet resource
+     * @param WIDTH The width of the sprites on the sheet
+     * @param HEIGHT The height of the sprites on the sheet
+     * @param SCALE_FACTOR The factor to scale the sprites by, 1 to keep their size
+     * @return The shared array of sprites
+     * @throws IOException if the sprite sheet could not be read
+     * @throws IllegalArgumentException if SCALE_FACTOR is equal to zero.
+     * @see #loadSpriteSheet(int, int, BufferedImage)
+     */
+    public static BufferedImage[] getSprites(String filename, final int WIDTH, final int HEIGHT,
+        final int SCALE_FACTOR) throws IOException {
+        final String KEY = filename + ":" + WIDTH + "x" + HEIGHT + "@" + SCALE_FACTOR;
+        synchronized (spriteCache) {
+            BufferedImage[] sprites = spriteCache.get(KEY);
+            if (sprites == null) {
+                long start = System.nanoTime();
+                BufferedImage sheet = getImageFromResource(filename);
+                StartupTrace.record(StartupTrace.SPRITE_DECODE, start);
+                start = System.nanoTime();
+                sprites = loadSpriteSheet(WIDTH, HEIGHT, sheet);
+                StartupTrace.record(StartupTrace.SPRITE_SLICE, start);
+                start = System.nanoTime();
+                for (int i = 0; i < sprites.length; i++) {
+                    if (SCALE_FACTOR == 1)
+                        sprites[i] = toCompatibleImage(sprites[i]);
+                    else
+                        sprites[i] = resizeImage(sprites[i], SCALE_FACTOR);
+                }
+                StartupTrace.record(StartupTrace.SPRITE_SCALE, start);
+                spriteCache.put(KEY, sprites);
+            }
+            return sprites;
+        }
+    }
+
     /**
      * Resizes an array of BufferedImage.
      * @param images the images to resize
@@ -1,10 +1,5 @@
-import java.awt.MouseInfo;
-import java.awt.Point;
-import java.awt.PointerInfo;
-import java.awt.Rectangle;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
-import java.io.IOException;
 import java.util.Random;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
@@ -34,7 +29,10 @@ public class ScreenDoggo implements AnimatedObject {
      */
 
     private AnimatedObjectPanel panel;
-    private Thread engineThread;
+    private final PointerSampler pointer;
+    private final MovementSystem movement;
+    // The MovementSystem body of the doggo, -1 while it is not in the engine
+    private int body;
     private SoundPlayer barkPlayer;
     private SoundPlayer songPlayer;
     private SoundPlayer eventPlayer;
@@ -42,52 +40,58 @@ public class ScreenDoggo implements AnimatedObject {
 
     private final int MAX_VOLUME;
     private JLabel songLabel;
-    private AnimationEngine engine;
 
-    public ScreenDoggo(AnimatedObjectPanel panel, ScreenDoggoMenu menu, final int MAX_VOLUME,
-        JLabel songLabel) {
+    /**
+     * Creates a doggo from its already loaded sprites. Its sounds are silent until they are
+     * set with setBark(), setSongs() and setEvents().
+     * @see StartupPipeline
+     */
+    public ScreenDoggo(AnimatedObjectPanel panel, ScreenDoggoMenu menu, BufferedImage[] sprites,
+        final int MAX_VOLUME, JLabel songLabel) {
+        this(panel, panel.getEngine(), sprites, menu.doggoIsSmall(),
+            menu.getBarkCheck(), menu.getMusicCheck(), menu.getRareEventCheck(),
+            menu.getContinuousMusicCheck(), MAX_VOLUME, songLabel);
+    }
+
+    /**
+     * Creates a silent doggo that is not on a panel, for extra doggos and for running
+     * without a screen.
+     * @param engine The engine whose pointer the doggo follows and that moves it
+     * @param sprites The sprites of the doggo
+     * @param small If the sprites are small (32 pixels)
+     * @see BenchmarkSuite
+     */
+    ScreenDoggo(AnimationEngine engine, BufferedImage[] sprites, boolean small) {
+        this(null, engine, sprites, small, false, false, false, false, 0, null);
+    }
+
+    private ScreenDoggo(AnimatedObjectPanel panel, AnimationEngine engine,
+        BufferedImage[] sprites, boolean small,
+        final boolean ALLOW_BARK, final boolean ALLOW_MUSIC, final boolean ALLOW_RARE_EVENTS,
+        final boolean CONTINUOUS_MUSIC, final int MAX_VOLUME, JLabel songLabel) {
         this.songLabel = songLabel;
         this.panel = panel;
+        this.pointer = engine.getPointer();
+        this.movement = engine.getMovement();
         this.MAX_VOLUME = MAX_VOLUME;
-        this.ALLOW_BARK = menu.getBarkCheck();
-        this.ALLOW_MUSIC = menu.getMusicCheck();
-        this.ALLOW_RARE_EVENTS = menu.getRareEventCheck();
-        this.CONTINUOUS_MUSIC = menu.getContinuousMusicCheck();
+        this.ALLOW_BARK = ALLOW_BARK;
+        this.ALLOW_MUSIC = ALLOW_MUSIC;
+        this.ALLOW_RARE_EVENTS = ALLOW_RARE_EVENTS;
+        this.CONTINUOUS_MUSIC = CONTINUOUS_MUSIC;
 
         rand = new Random();
-        engine = new AnimationEngine();
-        engine.add(this);
 
         barkPlayer = new SoundPlayer();
         songPlayer = new SoundPlayer();
         eventPlayer = new SoundPlayer();
 
-        barkPlayer.setClip(new BiClip("woof.wav"));
-
-        String[] songNames = ResourceParser.getResourcesFromFile(menu.getMusicSelection(), true);
-        songPlayer.setSongs(songNames);
-
-        String[] eventNames = ResourceParser.getResourcesFromFile("Event", true);
-        eventPlayer.setSongs(eventNames);
-
-        int width = 32, height = 32;
+        SPRITES = sprites;
 
-        BufferedImage spriteSheet = null;
-        try {
-            spriteSheet = ResourceParser.getImageFromResource(menu.getDoggoFilename());
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        if (menu.doggoIsSmall()) {
-            SPRITES = ResourceParser.loadSpriteSheet(width, height, spriteSheet);
+        if (small) {
             size = 32;
             FOLLOW_DIST = 50;
             FOLLOW_MOD = 2f;
         } else {
-            BufferedImage[] sprites = ResourceParser.loadSpriteSheet(width, height, spriteSheet);
-            ResourceParser.resizeImages(sprites, 2);
-            SPRITES = sprites;
             FOLLOW_DIST = 80;
             FOLLOW_MOD = 2.5f;
             size = 64;
@@ -99,36 +103,64 @@ public class ScreenDoggo implements AnimatedObject {
         eRand = new Random();
         state = States.FOLLOWING;
         animation = Animations.WALK_RIGHT;
-        updateImage();
         x = 0;
         y = 0;
         mx = 0;
         my = 0;
+        addBody();
+    }
+
+    /**
+     * Adds the body that moves the doggo to the MovementSystem.
+     */
+    private void addBody() {
+        body = movement.add(x, y);
+        // Slows down once within walking range of the pointer
+        movement.setRadius(body, FOLLOW_DIST * FOLLOW_MOD);
+        movement.setMaxAcceleration(body, ACCELERATION);
+    }
 
-        // Starts the Animation engine
-        engineThread = new Thread(engine);
-        engineThread.start();
+    /**
+     * Releases the body of the doggo, so it stops steering. A doggo added again gets a new
+     * body where it was.
+     */
+    @Override
+    public void removed() {
+        movement.remove(body);
+        body = -1;
     }
 
+    /**
+     * Creates the animations, timed in milliseconds so they play at the same speed whatever
+     * the engine's tick rate. The times are those the tick counted animations had at 60 ticks
+     * per second.
+     */
     private void setCustomAnimations() {
+        final double TICK_MILLIS = 1000 / 60.0;
+        final double FRAME_MILLIS = (Animation.DEFAULT_SPACER_FRAMES + 1) * TICK_MILLIS;
+        final double SIT_PAUSE_MILLIS = 20 * TICK_MILLIS;
+        final double SLEEP_FRAME_MILLIS = 31 * TICK_MILLIS;
+        final double SLEEP_DELAY_MILLIS = Animation.DEFAULT_SPACER_FRAMES * TICK_MILLIS;
         final boolean SIT_LOOP = false;
-        final int SIT_PAUSE = 20;
-
-        animationHandler.create("WALK_DOWN", SPRITES, 0, 4);
-        animationHandler.create("WALK_RIGHT", SPRITES, 4, 8);
-        animationHandler.create("WALK_UP", SPRITES, 8, 12);
-        animationHandler.create("WALK_LEFT", SPRITES, 12, 16);
-        animationHandler.create("SIT_DOWN", SPRITES, 16, 20, Animation.DEFAULT_SPACER_FRAMES,
-            SIT_PAUSE, SIT_LOOP);
-        animationHandler.create("SIT_RIGHT", SPRITES, 20, 24, Animation.DEFAULT_SPACER_FRAMES,
-            SIT_PAUSE, SIT_LOOP);
-        animationHandler.create("SIT_LEFT", SPRITES, 24, 28, Animation.DEFAULT_SPACER_FRAMES,
-            SIT_PAUSE, SIT_LOOP);
-        animationHandler.create("SIT_WAG", SPRITES, 18, 20);
-        animationHandler.create("SLEEP", SPRITES, 28, 30, 30, Animation.DEFAULT_SPACER_FRAMES,
+
+        createAnimation(Animations.WALK_DOWN, 0, 4, FRAME_MILLIS, 0, Animation.DEFAULT_LOOP);
+        createAnimation(Animations.WALK_RIGHT, 4, 8, FRAME_MILLIS, 0, Animation.DEFAULT_LOOP);
+        createAnimation(Animations.WALK_UP, 8, 12, FRAME_MILLIS, 0, Animation.DEFAULT_LOOP);
+        createAnimation(Animations.WALK_LEFT, 12, 16, FRAME_MILLIS, 0, Animation.DEFAULT_LOOP);
+        createAnimation(Animations.SIT_DOWN, 16, 20, FRAME_MILLIS, SIT_PAUSE_MILLIS, SIT_LOOP);
+        createAnimation(Animations.SIT_RIGHT, 20, 24, FRAME_MILLIS, SIT_PAUSE_MILLIS, SIT_LOOP);
+        createAnimation(Animations.SIT_LEFT, 24, 28, FRAME_MILLIS, SIT_PAUSE_MILLIS, SIT_LOOP);
+        createAnimation(Animations.SIT_WAG, 18, 20, FRAME_MILLIS, 0, Animation.DEFAULT_LOOP);
+        createAnimation(Animations.SLEEP, 28, 30, SLEEP_FRAME_MILLIS, SLEEP_DELAY_MILLIS,
             Animation.DEFAULT_LOOP);
-        animationHandler.create("RUN_RIGHT", SPRITES, 32, 35);
-        animationHandler.create("RUN_LEFT", SPRITES, 36, 39);
+        createAnimation(Animations.RUN_RIGHT, 32, 35, FRAME_MILLIS, 0, Animation.DEFAULT_LOOP);
+        createAnimation(Animations.RUN_LEFT, 36, 39, FRAME_MILLIS, 0, Animation.DEFAULT_LOOP);
+    }
+
+    private void createAnimation(Animations animation, final int START, final int END,
+        final double FRAME_MILLIS, final double DELAY_MILLIS, final boolean LOOP) {
+        handles[animation.ordinal()] = animationHandler.createTimed(animation.name(), SPRITES,
+            START, END, FRAME_MILLIS, DELAY_MILLIS, LOOP);
     }
 
     private final int FOLLOW_DIST;
@@ -139,40 +171,53 @@ public class ScreenDoggo implements AnimatedObject {
     private final boolean CONTINUOUS_MUSIC;
 
     private boolean paused;
+    // When the doggo naps if it keeps sitting, and when a random song starts, Long.MAX_VALUE
+    // while neither can happen
+    private long napNanos = Long.MAX_VALUE;
+    private long songNanos = Long.MAX_VALUE;
     private int mx, my;
+    private boolean pointerMoved;
     private int size;
-    private BufferedImage image;
     private int x, y;
     private States state;
     private Random eRand;
     private final BufferedImage[] SPRITES;
     private Animations animation;
     private final AnimationHandler animationHandler;
+    // The AnimationHandler handle of each of the Animations, by ordinal
+    private final int[] handles = new int[Animations.values().length];
 
     private enum Animations {
         WALK_RIGHT, WALK_LEFT, WALK_DOWN, WALK_UP, SLEEP, SIT_WAG, SIT_LEFT, SIT_RIGHT, SIT_DOWN, RUN_LEFT, RUN_RIGHT;
     }
 
-    private void updateImage() {
-        image = animationHandler.getAnimatedImage(animation.name());
+    /**
+     * Evaluates the animation now. Painting does not call this, it picks the frame of the
+     * timed animation when it draws.
+     */
+    @Override
+    public BufferedImage getImage() {
+        return animationHandler.getAnimatedImage(handles[animation.ordinal()]);
     }
 
     @Override
-    public BufferedImage getImage() {
-        return image;
+    public Animation getTimedAnimation() {
+        Animation current = animationHandler.get(handles[animation.ordinal()]);
+        return current.getClip().isTimed() ? current : null;
     }
 
     private void changeAnimation(Animations animation) {
         if (this.animation != animation) {
-            animationHandler.reset(animation.name());
+            animationHandler.reset(handles[animation.ordinal()]);
             this.animation = animation;
         }
     }
 
     private void changeAnimation(Animations state, boolean skip) {
         changeAnimation(state);
-        if (skip && !animationHandler.isDone(animation.name())) {
-            animationHandler.setDone(animation.name());
+        final int HANDLE = handles[animation.ordinal()];
+        if (skip && !animationHandler.isDone(HANDLE)) {
+            animationHandler.setDone(HANDLE);
         }
     }
 
@@ -189,7 +234,8 @@ public class ScreenDoggo implements AnimatedObject {
 
     public boolean isDoneSitting() {
         if (isSitting())
-            if (animationHandler.isDone(animation.name()) || animation == Animations.SIT_WAG)
+            if (animationHandler.isDone(handles[animation.ordinal()])
+                || animation == Animations.SIT_WAG)
                 return true;
         return false;
     }
@@ -201,77 +247,75 @@ public class ScreenDoggo implements AnimatedObject {
         return false;
     }
 
-    final int SPEED_RUN = 5;
-    final int SPEED_WALK = 2;
+    // The mean time until a nap or a random song, the 1 in 100000 and 1 in 6000 chances per
+    // tick they had at 60 ticks per second
+    final double NAP_MEAN_SECONDS = 100000 / 60.0;
+    final double SONG_MEAN_SECONDS = 6000 / 60.0;
+
+    // In pixels per second, 5 and 2 pixels per tick at 60 ticks per second
+    final float SPEED_RUN = 300;
+    final float SPEED_WALK = 120;
+    // In pixels per second squared, reaching running speed in a quarter of a second
+    final float ACCELERATION = 1200;
 
     private void track() {
-        PointerInfo mi = MouseInfo.getPointerInfo();
-        Point p = mi.getLocation();
-        mx = p.x;
-        my = p.y;
+        long position = pointer.getPosition();
+        mx = PointerSampler.getX(position);
+        my = PointerSampler.getY(position);
     }
 
     private void follow() {
         track();
-        int velX = 0;
-        int velY = 0;
+        follow(mx, my);
+    }
 
-        int inset = size / 2;
+    /**
+     * Steers the doggo towards a pointer location through the MovementSystem, which moves
+     * it on the next tick, or sits when it is close.
+     * @param mx The x coordinate of the pointer
+     * @param my The y coordinate of the pointer
+     */
+    void follow(int mx, int my) {
+        this.mx = mx;
+        this.my = my;
 
-        int leftX = x;
-        int rightX = x + size;
+        int inset = size / 2;
         int centerY = y + inset;
         int centerX = x + inset;
         int runRange = (int) (FOLLOW_DIST * FOLLOW_MOD);
 
         float diffX = centerX - mx;
         float diffY = centerY - my;
-        float dist = (float) Math.sqrt((diffX * diffX) + (diffY * diffY));
+        // Compares squared distances, there is no need for the distance itself
+        float distSquared = (diffX * diffX) + (diffY * diffY);
 
-        if (dist < FOLLOW_DIST) {
+        if (distSquared < FOLLOW_DIST * FOLLOW_DIST) {
+            stop();
             sitFollow();
         } else {
-            boolean hAnimation = false;
-            if (Math.abs(diffX) > Math.abs(diffY))
-                hAnimation = true;
-            if (mx > rightX) {
-                if (mx > centerX + runRange) {
-                    if (hAnimation)
-                        changeAnimation(Animations.RUN_RIGHT);
-                    velX = SPEED_RUN;
-                } else {
-                    if (hAnimation)
-                        changeAnimation(Animations.WALK_RIGHT);
-                    velX = SPEED_WALK;
-                }
-            } else if (mx < centerX - runRange) {
-                if (hAnimation)
-                    changeAnimation(Animations.RUN_LEFT);
-                velX = SPEED_RUN * -1;
-            } else if (mx < leftX) {
-                if (hAnimation)
-                    changeAnimation(Animations.WALK_LEFT);
-                velX = SPEED_WALK * -1;
-            }
-            if (my < centerY) {
-                if (!hAnimation)
-                    changeAnimation(Animations.WALK_UP);
-                if (my < centerY - runRange)
-                    velY = SPEED_RUN * -1;
+            boolean run = Math.abs(diffX) > runRange || Math.abs(diffY) > runRange;
+            movement.setSteering(body, MovementSystem.Steering.ARRIVE);
+            movement.setTarget(body, mx - inset, my - inset);
+            movement.setMaxSpeed(body, run ? SPEED_RUN : SPEED_WALK);
+            if (Math.abs(diffX) > Math.abs(diffY)) {
+                if (diffX < 0)
+                    changeAnimation(run ? Animations.RUN_RIGHT : Animations.WALK_RIGHT);
                 else
-                    velY = SPEED_WALK * -1;
+                    changeAnimation(run ? Animations.RUN_LEFT : Animations.WALK_LEFT);
+            } else if (diffY < 0) {
+                changeAnimation(Animations.WALK_DOWN);
             } else {
-                if (!hAnimation)
-                    changeAnimation(Animations.WALK_DOWN);
-                if (my > centerY + runRange)
-                    velY = SPEED_RUN;
-                else
-                    velY = SPEED_WALK;
+                changeAnimation(Animations.WALK_UP);
             }
         }
+    }
 
-        x += velX;
-        y += velY;
+    /**
+     * Stops the doggo where it is.
+     */
+    private void stop() {
+        movement.setSteering(body, MovementSystem.Steering.NONE);
+        movement.halt(body);
     }
 
     private void sitFollow() {
@@ -282,7 +326,6 @@ public class ScreenDoggo implements AnimatedObject {
 
         int topY = y;
         int btmY = y + size;
-        track();
 
         if (mx < leftX - inset) {
             if (wasDoneSitting)
@@ -312,40 +355,114 @@ public class ScreenDoggo implements AnimatedObject {
 
     @Override
     public void animate() {
+        if (body == -1)
+            addBody();
+        // Where the MovementSystem moved the doggo this tick
+        x = Math.round(movement.getX(body));
+        y = Math.round(movement.getY(body));
+        int lastMx = mx;
+        int lastMy = my;
+        // Only following steers, the doggo stays put in every other state
         if (state == States.FOLLOWING)
             follow();
-        else if (state == States.SITTING) {
+        else
+            stop();
+        long now = System.nanoTime();
+        if (state == States.SITTING) {
+            track();
             sitFollow();
-            // rare chance your doggo takes a snoozer
-            if (eRand.nextInt(100000) == 50000) {
-                if (state != States.NAPPING)
-                    state = States.NAPPING;
-                else
-                    state = States.SITTING;
+            // rare chance your doggo takes a snoozer, timed so it does not depend on how
+            // often the doggo is ticked
+            if (napNanos == Long.MAX_VALUE)
+                napNanos = randomTime(now, NAP_MEAN_SECONDS);
+            if (now >= napNanos) {
+                napNanos = Long.MAX_VALUE;
+                state = States.NAPPING;
             }
-        } else if (state == States.NAPPING) {
-            changeAnimation(Animations.SLEEP);
+        } else {
+            napNanos = Long.MAX_VALUE;
+            if (state == States.NAPPING)
+                changeAnimation(Animations.SLEEP);
         }
-        checkSound();
-        updateImage();
-        panel.repaint();
+        pointerMoved = mx != lastMx || my != lastMy;
+        checkSound(now);
+    }
+
+    /**
+     * Returns a random time for an event that happens on average once every MEAN_SECONDS,
+     * however often it is checked.
+     * @param NOW The System.nanoTime() to start from
+     * @param MEAN_SECONDS The mean time until the event
+     * @return The System.nanoTime() of the event
+     */
+    private long randomTime(final long NOW, final double MEAN_SECONDS) {
+        return NOW + (long) (-Math.log(1 - eRand.nextDouble()) * MEAN_SECONDS * 1e9);
+    }
+
+    /**
+     * The doggo needs a tick to start a nap or a random song, even while the engine idles.
+     */
+    @Override
+    public long getNextEventNanos() {
+        return Math.min(napNanos, songNanos);
+    }
+
+    /**
+     * The doggo is quiescent while napping, or while done sitting (or sitting in place near
+     * the pointer while following) and the pointer did not move during the last tick. Wagging
+     * is not quiescent, as it loops.
+     */
+    @Override
+    public boolean isQuiescent() {
+        if (state == States.NAPPING)
+            return true;
+        if (state == States.SITTING || state == States.FOLLOWING)
+            return !pointerMoved && animation != Animations.SIT_WAG && isDoneSitting();
+        return false;
     }
 
-    private void checkSound() {
+    private void checkSound(final long NOW) {
         if (!barkPlayer.isPlaying() && animation != Animations.SLEEP && !isSitting()) {
             if (eRand.nextInt(750) == 500) {
                 bark();
             }
         }
-        if (paused)
+        if (paused || !ALLOW_MUSIC || !songPlayer.hasSongs() || songPlayer.isOpen()) {
+            songNanos = Long.MAX_VALUE;
             return;
-        if (ALLOW_MUSIC && !songPlayer.isOpen()) {
-            if (CONTINUOUS_MUSIC || eRand.nextInt(6000) == 1000) {
-                playMusic();
-                songLabel.setText(songPlayer.getName());
-                songLabel.setToolTipText(songPlayer.getName());
-            }
         }
+        if (!CONTINUOUS_MUSIC && songNanos == Long.MAX_VALUE)
+            songNanos = randomTime(NOW, SONG_MEAN_SECONDS);
+        if (CONTINUOUS_MUSIC || NOW >= songNanos) {
+            songNanos = Long.MAX_VALUE;
+            playMusic();
+            songLabel.setText(songPlayer.getName());
+            songLabel.setToolTipText(songPlayer.getName());
+        }
+    }
+
+    /**
+     * Sets the bark sound. Safe to call from any thread.
+     * @param bark The bark effect
+     */
+    public void setBark(BiClip bark) {
+        barkPlayer.setClip(bark);
+    }
+
+    /**
+     * Sets the music to play. Safe to call from any thread.
+     * @param songs The songs to shuffle through
+     */
+    public void setSongs(BiClip[] songs) {
+        songPlayer.setSongs(songs);
+    }
+
+    /**
+     * Sets the music of the rare events. Safe to call from any thread.
+     * @param events The event songs
+     */
+    public void setEvents(BiClip[] events) {
+        eventPlayer.setSongs(events);
     }
 
     public void mute(boolean mute) {
@@ -366,12 +483,13 @@ public class ScreenDoggo implements AnimatedObject {
 
     @Override
     public int getHeight() {
-        return image.getHeight();
+        // Every sprite of the sheet has the same size
+        return SPRITES[0].getHeight();
     }
 
     @Override
     public int getWidth() {
-        return image.getWidth();
+        return SPRITES[0].getWidth();
     }
 
     @Override
@@ -388,6 +506,18 @@ public class ScreenDoggo implements AnimatedObject {
         return size;
     }
 
+    /**
+     * Moves the doggo, for placing it before it is animated.
+     * @param x The x coordinate of the doggo
+     * @param y The y coordinate of the doggo
+     */
+    public void setLocation(int x, int y) {
+        this.x = x;
+        this.y = y;
+        if (body != -1)
+            movement.setLocation(body, x, y);
+    }
+
     public void chanceEvent() {
         switch (eRand.nextInt(10)) {
             case 1:
@@ -482,12 +612,8 @@ public class ScreenDoggo implements AnimatedObject {
 
     @Override
     public boolean intersects(AnimatedObject obj) {
-        Rectangle rectangle = new Rectangle(x, y, getWidth(), getHeight());
-        Rectangle objRectangle =
-            new Rectangle(obj.getX(), obj.getY(), obj.getWidth(), obj.getHeight());
-        if (rectangle.intersects(objRectangle))
-            return true;
-        return false;
+        return SpatialGrid.intersects(x, y, getWidth(), getHeight(), obj.getX(), obj.getY(),
+            obj.getWidth(), obj.getHeight());
     }
 
 }
@@ -13,6 +13,8 @@ public class ScreenDoggoMain {
      * @param args
      */
     public static void main(String[] args) {
+        StartupTrace.reset();
+        StartupTrace.mark(StartupTrace.MAIN);
         // Starts and shows window
         SwingUtilities.invokeLater(new ScreenDoggoWindow());
     }
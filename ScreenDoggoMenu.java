@@ -215,6 +215,7 @@ public class ScreenDoggoMenu implements Runnable, WindowListener {
         frame.setLocationRelativeTo(null);
 
         frame.setVisible(true);
+        StartupTrace.mark(StartupTrace.MENU_SHOWN);
     }
 
     private class Handler implements ActionListener, ListSelectionListener {
@@ -223,6 +224,7 @@ public class ScreenDoggoMenu implements Runnable, WindowListener {
         public void actionPerformed(ActionEvent e) {
             switch (e.getActionCommand()) {
                 case "start":
+                    StartupTrace.mark(StartupTrace.MENU_CLOSED);
                     // set the vars chosen
                     if (smBtn.isSelected())
                         smallDoggo = true;
@@ -71,6 +71,13 @@ public class ScreenDoggoWindow implements Runnable {
 
     @Override
     public void run() {
+        // Pressed No boop. exit program
+        if (menu.getDoggoFilename() == null)
+            return;
+
+        // Loads the doggo and its sounds while the window is built
+        StartupPipeline startup = new StartupPipeline(menu);
+
         Toolkit tools = Toolkit.getDefaultToolkit();
         Dimension screen = tools.getScreenSize();
 
@@ -156,11 +163,8 @@ public class ScreenDoggoWindow implements Runnable {
             playBtn.setEnabled(false);
         }
 
-        // Pressed No boop. exit program
-        if (menu.getDoggoFilename() == null)
-            return;
-
-        panel = new AnimatedObjectPanel(screen, frame, menu, components, songLabel, MAX_VOLUME);
+        panel = new AnimatedObjectPanel(screen, frame, menu, startup, components, songLabel,
+            MAX_VOLUME);
 
 
         frame.add(panel);
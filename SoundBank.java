@@ -0,0 +1,95 @@
+import java.io.IOException;
+import java.net.URL;
+import java.util.Hashtable;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Decodes short sound effects (barks and event sounds) once into PCM byte arrays and hands
+ * out the shared EffectPlayback of each, so replaying an effect never touches the disk again.
+ */
+public class SoundBank {
+
+    public static final int DEFAULT_VOICES = 3;
+
+    private static final Hashtable<String, EffectPlayback> effects =
+        new Hashtable<String, EffectPlayback>();
+
+    /**
+     * Returns the EffectPlayback of a resource, decoding it the first time.
+     * @param resource The class path resource of the effect
+     * @return The shared EffectPlayback, or null if the resource could not be decoded
+     */
+    public static EffectPlayback get(String resource) {
+        synchronized (effects) {
+            EffectPlayback effect = effects.get(resource);
+            if (effect == null) {
+                effect = decode(resource);
+                if (effect != null)
+                    effects.put(resource, effect);
+            }
+            return effect;
+        }
+    }
+
+    /**
+     * Decodes and opens the voices of an effect ahead of its first play.
+     * @param resource The class path resource of the effect
+     * @return true if the effect is ready to play, false otherwise
+     */
+    public static boolean preload(String resource) {
+        EffectPlayback effect = get(resource);
+        return effect != null && effect.open();
+    }
+
+    /**
+     * Releases the lines of every effect. The decoded data is kept.
+     */
+    public static void releaseAll() {
+        synchronized (effects) {
+            for (EffectPlayback effect : effects.values()) {
+                effect.release();
+            }
+        }
+    }
+
+    /**
+     * Reads and decodes a resource into PCM data.
+     * @param resource The class path resource
+     * @return An EffectPlayback of the data, or null if it could not be decoded
+     */
+    private static EffectPlayback decode(String resource) {
+        URL url = SoundBank.class.getResource(resource);
+        if (url == null) {
+            System.out.println("Resource incorrectly spelled or not found for: " + resource);
+            return null;
+        }
+        AudioInputStream stream = null;
+        try {
+            stream = AudioSystem.getAudioInputStream(url);
+            AudioFormat format = stream.getFormat();
+            if (format.getEncoding() != AudioFormat.Encoding.PCM_SIGNED
+                && format.getEncoding() != AudioFormat.Encoding.PCM_UNSIGNED) {
+                format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, format.getSampleRate(),
+                    16, format.getChannels(), format.getChannels() * 2, format.getSampleRate(),
+                    false);
+                stream = AudioSystem.getAudioInputStream(format, stream);
+            }
+            byte[] data = stream.readAllBytes();
+            return new EffectPlayback(resource, format, data, DEFAULT_VOICES);
+        } catch (UnsupportedAudioFileException | IOException | IllegalArgumentException e) {
+            System.out.println(
+                "Doggo BarkIO Error! " + e.getMessage() + " for resource: " + resource);
+            return null;
+        } finally {
+            try {
+                if (stream != null)
+                    stream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -8,9 +8,10 @@ import javax.sound.sampled.Clip;
  */
 public class SoundPlayer {
 
-    private BiClip[] clipList;
+    // Set by the StartupPipeline while the player may already be in use
+    private volatile BiClip[] clipList;
     private SongQueue shuffleQueue;
-    private BiClip clip;
+    private volatile BiClip clip;
 
     private boolean muted;
     private float volume;
@@ -56,6 +57,15 @@ public class SoundPlayer {
         clipList = songClips;
     }
 
+    /**
+     * Returns if there are songs to play.
+     * @return true if songs were set and there is at least one, false otherwise
+     */
+    public boolean hasSongs() {
+        BiClip[] clips = clipList;
+        return clips != null && clips.length > 0;
+    }
+
     /**
      * Returns if the song is undergoing active system reading
      * @return true if the song is being read/ written, false otherwise.
@@ -72,7 +82,8 @@ public class SoundPlayer {
      * @return true if the song is over, false otherwise
      */
     public boolean isDone() {
-        return clip.isDone();
+        BiClip clip = this.clip;
+        return clip == null || clip.isDone();
     }
 
     /**
@@ -108,10 +119,11 @@ public class SoundPlayer {
      * @throws NoSuchElementException if the track was not found
      */
     public void play(String track) {
+        BiClip[] clips = hasSongs() ? clipList : new BiClip[0];
         clip = null;
-        for (int i = 0; i < clipList.length; i++) {
-            if (clipList[i].getName().equals(track)) {
-                clip = clipList[i];
+        for (int i = 0; i < clips.length; i++) {
+            if (clips[i].getName().equals(track)) {
+                clip = clips[i];
                 break;
             }
         }
@@ -134,8 +146,11 @@ public class SoundPlayer {
 
     /**
      * Plays the next song in the queue. If the queue is empty or null, refills the queue first.
+     * Does nothing if there are no songs.
      */
     public void play() {
+        if (!hasSongs())
+            return;
         if (shuffleQueue == null || shuffleQueue.isEmpty())
             shuffleQueue = new SongQueue(clipList);
         clip = shuffleQueue.dequeue();
@@ -175,7 +190,8 @@ public class SoundPlayer {
         update();
         if (loops < 0)
             throw new IllegalArgumentException("Looping under zero not allowed");
-        clip.loop(loops);
+        if (clip != null)
+            clip.loop(loops);
     }
 
     /**
@@ -210,6 +226,34 @@ public class SoundPlayer {
         return clip.isPlaying();
     }
 
+    /**
+     * Returns the number of bytes of audio data held in memory by all loaded tracks.
+     * @return The resident audio bytes of this player
+     * @see BiClip#getResidentBytes()
+     */
+    public long getResidentBytes() {
+        long bytes = 0;
+        if (clipList != null) {
+            for (BiClip track : clipList) {
+                bytes += track.getResidentBytes();
+            }
+        }
+        if (clip != null && (clipList == null || !contains(clipList, clip)))
+            bytes += clip.getResidentBytes();
+        return bytes;
+    }
+
+    /**
+     * Returns if the array holds the clip.
+     */
+    private static boolean contains(BiClip[] clips, BiClip clip) {
+        for (BiClip track : clips) {
+            if (track == clip)
+                return true;
+        }
+        return false;
+    }
+
     /**
      * Describes a state of the song.
      * @return false if the song is null or is not open, true if it open.
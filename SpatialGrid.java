@@ -0,0 +1,245 @@
+import java.util.Arrays;
+
+/**
+ * A uniform grid over the bounds of AnimatedObjects, for finding the object under a point or
+ * the objects overlapping an object without checking every object. The AnimationEngine
+ * rebuilds its grid on the engine thread from each RenderSnapshot it publishes, so queries
+ * see the bounds that are painted and never read the objects while they are being animated.
+ * 
+ * Each object is entered into every cell its bounds cover. The cells are hashed into a
+ * table of linked entries held in int arrays, so the grid covers any coordinates and does
+ * not allocate once its arrays have grown to fit the objects. An object's index is its index
+ * in the array or snapshot the grid was built from, later objects are painted over earlier
+ * ones, so the topmost object at a point is the one with the highest index. A query only
+ * looks at the objects sharing a cell with it.
+ * 
+ * The methods are synchronized, so the grid can be queried from the EDT while the engine
+ * rebuilds it.
+ */
+public class SpatialGrid {
+
+    public static final int DEFAULT_CELL_SHIFT = 7;
+
+    private static final int MIN_BUCKETS = 64;
+
+    private final int CELL_SHIFT;
+
+    private AnimatedObject[] objects;
+    private int count;
+    private int[] xs, ys, widths, heights;
+
+    private int[] buckets;
+    private int[] entryObject;
+    private int[] entryCellX, entryCellY;
+    private int[] entryNext;
+    private int entryCount;
+
+    /**
+     * Creates an empty grid with cells of 2^DEFAULT_CELL_SHIFT (128) pixels.
+     */
+    public SpatialGrid() {
+        this(DEFAULT_CELL_SHIFT);
+    }
+
+    /**
+     * Creates an empty grid.
+     * @param CELL_SHIFT The size of the cells as a power of two
+     */
+    public SpatialGrid(final int CELL_SHIFT) {
+        this.CELL_SHIFT = CELL_SHIFT;
+        objects = new AnimatedObject[0];
+        xs = new int[16];
+        ys = new int[16];
+        widths = new int[16];
+        heights = new int[16];
+        buckets = new int[MIN_BUCKETS];
+        Arrays.fill(buckets, -1);
+        entryObject = new int[64];
+        entryCellX = new int[64];
+        entryCellY = new int[64];
+        entryNext = new int[64];
+    }
+
+    /**
+     * Rebuilds the grid from the current bounds of objects, which must not be moving.
+     * @param objects The objects
+     */
+    public synchronized void rebuild(AnimatedObject[] objects) {
+        resize(objects.length);
+        for (int i = 0; i < count; i++) {
+            AnimatedObject obj = objects[i];
+            this.objects[i] = obj;
+            xs[i] = obj.getX();
+            ys[i] = obj.getY();
+            widths[i] = obj.getWidth();
+            heights[i] = obj.getHeight();
+        }
+        index();
+    }
+
+    /**
+     * Rebuilds the grid from the bounds captured in a snapshot, which are copied.
+     * @param snapshot The snapshot
+     * @param count The number of objects to take from the start of the snapshot
+     */
+    public synchronized void rebuild(RenderSnapshot snapshot, int count) {
+        resize(count);
+        for (int i = 0; i < count; i++) {
+            objects[i] = snapshot.getObject(i);
+            xs[i] = snapshot.getX(i);
+            ys[i] = snapshot.getY(i);
+            widths[i] = snapshot.getWidth(i);
+            heights[i] = snapshot.getHeight(i);
+        }
+        index();
+    }
+
+    /**
+     * Makes room for a number of objects, dropping the references to the objects past it.
+     */
+    private void resize(final int COUNT) {
+        if (COUNT > xs.length) {
+            int capacity = Math.max(COUNT, xs.length * 2);
+            xs = new int[capacity];
+            ys = new int[capacity];
+            widths = new int[capacity];
+            heights = new int[capacity];
+        }
+        if (COUNT > objects.length)
+            objects = Arrays.copyOf(objects, xs.length);
+        else
+            Arrays.fill(objects, COUNT, Math.min(count, objects.length), null);
+        count = COUNT;
+    }
+
+    /**
+     * Enters the bounds of the objects into the cells they cover.
+     */
+    private void index() {
+        int bucketCount = buckets.length;
+        while (bucketCount < count * 2) {
+            bucketCount *= 2;
+        }
+        if (bucketCount != buckets.length)
+            buckets = new int[bucketCount];
+        Arrays.fill(buckets, -1);
+        entryCount = 0;
+
+        for (int i = 0; i < count; i++) {
+            int x = xs[i], y = ys[i], width = widths[i], height = heights[i];
+            if (width <= 0 || height <= 0)
+                continue;
+            int lastX = (x + width - 1) >> CELL_SHIFT;
+            int lastY = (y + height - 1) >> CELL_SHIFT;
+            for (int cellY = y >> CELL_SHIFT; cellY <= lastY; cellY++) {
+                for (int cellX = x >> CELL_SHIFT; cellX <= lastX; cellX++) {
+                    insert(cellX, cellY, i);
+                }
+            }
+        }
+    }
+
+    private void insert(final int CELL_X, final int CELL_Y, final int INDEX) {
+        if (entryCount == entryObject.length) {
+            entryObject = Arrays.copyOf(entryObject, entryCount * 2);
+            entryCellX = Arrays.copyOf(entryCellX, entryCount * 2);
+            entryCellY = Arrays.copyOf(entryCellY, entryCount * 2);
+            entryNext = Arrays.copyOf(entryNext, entryCount * 2);
+        }
+        final int BUCKET = bucket(CELL_X, CELL_Y);
+        entryObject[entryCount] = INDEX;
+        entryCellX[entryCount] = CELL_X;
+        entryCellY[entryCount] = CELL_Y;
+        entryNext[entryCount] = buckets[BUCKET];
+        buckets[BUCKET] = entryCount++;
+    }
+
+    private int bucket(final int CELL_X, final int CELL_Y) {
+        return (CELL_X * 73856093 ^ CELL_Y * 19349663) & (buckets.length - 1);
+    }
+
+    /**
+     * Returns the index of the topmost object whose bounds contain a point.
+     * @param x The x coordinate of the point
+     * @param y The y coordinate of the point
+     * @return The index of the object in the array the grid was built from, or -1 if there is
+     * no object at the point
+     */
+    public synchronized int hitTest(int x, int y) {
+        int top = -1;
+        for (int e = buckets[bucket(x >> CELL_SHIFT, y >> CELL_SHIFT)]; e != -1;
+            e = entryNext[e]) {
+            int i = entryObject[e];
+            if (i > top && x >= xs[i] && x < xs[i] + widths[i] && y >= ys[i]
+                && y < ys[i] + heights[i])
+                top = i;
+        }
+        return top;
+    }
+
+    /**
+     * Returns the topmost object whose bounds contain a point.
+     * @param x The x coordinate of the point
+     * @param y The y coordinate of the point
+     * @return The object, or null if there is no object at the point
+     */
+    public synchronized AnimatedObject getObjectAt(int x, int y) {
+        int index = hitTest(x, y);
+        return index == -1 ? null : objects[index];
+    }
+
+    /**
+     * Finds the objects whose bounds overlap the bounds of an object.
+     * @param index The index of the object
+     * @param overlapping Filled with the indexes of the overlapping objects, in no order. At
+     * most its length are found.
+     * @return The number of overlapping objects found
+     */
+    public synchronized int getOverlapping(int index, int[] overlapping) {
+        int x = xs[index], y = ys[index], width = widths[index], height = heights[index];
+        if (width <= 0 || height <= 0)
+            return 0;
+        int found = 0;
+        int lastX = (x + width - 1) >> CELL_SHIFT;
+        int lastY = (y + height - 1) >> CELL_SHIFT;
+        for (int cellY = y >> CELL_SHIFT; cellY <= lastY; cellY++) {
+            for (int cellX = x >> CELL_SHIFT; cellX <= lastX; cellX++) {
+                for (int e = buckets[bucket(cellX, cellY)]; e != -1; e = entryNext[e]) {
+                    int i = entryObject[e];
+                    // Buckets are shared by the cells that hash to them
+                    if (entryCellX[e] != cellX || entryCellY[e] != cellY)
+                        continue;
+                    if (i == index || !intersects(x, y, width, height, xs[i], ys[i], widths[i],
+                        heights[i]))
+                        continue;
+                    // Count each pair once, in the cell holding the corner of the overlap
+                    if (Math.max(x, xs[i]) >> CELL_SHIFT != cellX
+                        || Math.max(y, ys[i]) >> CELL_SHIFT != cellY)
+                        continue;
+                    if (found == overlapping.length)
+                        return found;
+                    overlapping[found++] = i;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return The number of objects in the grid
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Returns if two rectangles overlap, as Rectangle.intersects() does, without creating
+     * Rectangles. Empty rectangles overlap nothing.
+     * @return true if the rectangles share at least one pixel, false otherwise
+     */
+    public static boolean intersects(int x1, int y1, int width1, int height1, int x2, int y2,
+        int width2, int height2) {
+        return width1 > 0 && height1 > 0 && width2 > 0 && height2 > 0 && x1 < x2 + width2
+            && x2 < x1 + width1 && y1 < y2 + height2 && y2 < y1 + height1;
+    }
+}
@@ -0,0 +1,194 @@
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Loads everything the doggo needs at startup concurrently on a small pool of daemon threads,
+ * so the EDT only waits for what it is about to show. Its stages are:
+ * 
+ * index   - builds the ResourceParser's ResourceIndex of the class path
+ * sprites - decodes, slices and scales the sprite sheet
+ * music   - finds the selected music (after index) and creates its BiClips
+ * events  - finds the event music (after index) and creates its BiClips
+ * bark    - decodes the bark into the SoundBank
+ * 
+ * The stages start as soon as the pipeline is created. getSprites() blocks until the sprites
+ * are ready, while the audio is handed out through CompletableFutures to be set once it is
+ * ready. When every stage has finished, the pool is shut down, and the timing of each stage
+ * is printed if the system property "doggo.traceStartup" is true.
+ */
+public class StartupPipeline {
+
+    public static final String BARK = "woof.wav";
+    public static final String EVENTS = "Event";
+    public static final int SPRITE_SIZE = 32;
+    public static final int MAX_THREADS = 4;
+
+    private final ExecutorService executor;
+    private final long start;
+    private final ArrayList<String> timings;
+
+    private final CompletableFuture<ResourceIndex> index;
+    private final CompletableFuture<BufferedImage[]> sprites;
+    private final CompletableFuture<BiClip[]> songs;
+    private final CompletableFuture<BiClip[]> events;
+    private final CompletableFuture<BiClip> bark;
+
+    /**
+     * Starts loading the doggo and sounds selected in the menu.
+     * @param menu The menu the user chose their doggo in
+     */
+    public StartupPipeline(ScreenDoggoMenu menu) {
+        this(menu.getDoggoFilename(), menu.doggoIsSmall(), menu.getMusicSelection());
+    }
+
+    /**
+     * Starts loading a doggo and its sounds.
+     * @param SHEET The sprite sheet of the doggo
+     * @param SMALL If the doggo is small, unscaled
+     * @param MUSIC The music file listing the songs to play
+     */
+    public StartupPipeline(final String SHEET, final boolean SMALL, final String MUSIC) {
+        start = System.nanoTime();
+        timings = new ArrayList<>();
+        final AtomicInteger THREADS = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(
+            Math.max(2, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors())),
+            runnable -> {
+                Thread thread = new Thread(runnable, "Startup-" + THREADS.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+        final int SCALE = SMALL ? 1 : 2;
+
+        index = stage("index", ResourceParser::getIndex);
+        sprites = stage("sprites", () -> {
+            try {
+                return ResourceParser.getSprites(SHEET, SPRITE_SIZE, SPRITE_SIZE, SCALE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        songs = index.thenCompose(i -> stage("music", () -> createClips(MUSIC,
+            StartupTrace.MUSIC_SCAN, StartupTrace.MUSIC_CLIPS)));
+        events = index.thenCompose(i -> stage("events", () -> createClips(EVENTS,
+            StartupTrace.EVENT_SCAN, StartupTrace.EVENT_CLIPS)));
+        bark = stage("bark", () -> {
+            SoundBank.preload(BARK);
+            return new BiClip(BARK, true);
+        });
+
+        CompletableFuture.allOf(index, sprites, songs, events, bark).whenComplete((v, e) -> {
+            executor.shutdown();
+            if (Boolean.getBoolean("doggo.traceStartup"))
+                System.out.println(getReport());
+        });
+    }
+
+    /**
+     * Runs a stage on the pool, recording when it started and finished.
+     * @param name The name of the stage in the report
+     * @param task The work of the stage
+     * @return The result of the stage
+     */
+    private <T> CompletableFuture<T> stage(String name, Supplier<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            long stageStart = System.nanoTime();
+            try {
+                return task.get();
+            } finally {
+                long end = System.nanoTime();
+                synchronized (timings) {
+                    timings.add(name + " " + toMillis(stageStart) + "-" + toMillis(end) + " ms");
+                }
+            }
+        }, executor);
+    }
+
+    /**
+     * Creates the BiClips of every resource in a file. The clips do not open until played.
+     * @param filename The file listing the resources
+     * @param scanPhase The StartupTrace phase of finding the resources
+     * @param clipPhase The StartupTrace phase of creating the clips
+     * @return The clips, which are empty if the file was not found
+     */
+    private static BiClip[] createClips(String filename, String scanPhase, String clipPhase) {
+        long start = System.nanoTime();
+        String[] names;
+        try {
+            names = ResourceParser.getResourcesFromFile(filename, true);
+        } catch (NoSuchElementException e) {
+            System.out.println(e.getMessage());
+            return new BiClip[0];
+        } finally {
+            StartupTrace.record(scanPhase, start);
+        }
+        start = System.nanoTime();
+        BiClip[] clips = new BiClip[names.length];
+        for (int i = 0; i < clips.length; i++) {
+            clips[i] = new BiClip(names[i]);
+        }
+        StartupTrace.record(clipPhase, start);
+        return clips;
+    }
+
+    private long toMillis(long nanos) {
+        return (nanos - start) / 1000000;
+    }
+
+    /**
+     * Waits for the sprites of the doggo.
+     * @return The shared sprites of the doggo
+     * @throws IOException if the sprite sheet could not be read
+     */
+    public BufferedImage[] getSprites() throws IOException {
+        try {
+            return sprites.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException)
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The clips of the selected music, once they are ready
+     */
+    public CompletableFuture<BiClip[]> getSongs() {
+        return songs;
+    }
+
+    /**
+     * @return The clips of the event music, once they are ready
+     */
+    public CompletableFuture<BiClip[]> getEvents() {
+        return events;
+    }
+
+    /**
+     * @return The bark effect, once it is decoded
+     */
+    public CompletableFuture<BiClip> getBark() {
+        return bark;
+    }
+
+    /**
+     * Describes when each finished stage started and ended, in milliseconds since the
+     * pipeline was created.
+     * @return The stage timings
+     */
+    public String getReport() {
+        synchronized (timings) {
+            return "Startup stages: " + String.join(", ", timings);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Records when each phase of startup started and ended, in nanoseconds since the trace was
+ * reset (by ScreenDoggoMain.main() when the program starts). Only the first occurrence of a
+ * phase is kept, so phases like the first engine tick can be marked without checking.
+ * 
+ * When the system property "doggo.traceStartup" is set, the trace is printed as JSON once
+ * the first frame has been painted.
+ */
+public class StartupTrace {
+
+    public static final String MAIN = "main";
+    public static final String MENU_SHOWN = "menu shown";
+    public static final String MENU_CLOSED = "menu closed";
+    public static final String RESOURCE_INDEX = "resource index";
+    public static final String MUSIC_SCAN = "music scan";
+    public static final String EVENT_SCAN = "event scan";
+    public static final String SPRITE_DECODE = "sprite decode";
+    public static final String SPRITE_SLICE = "sprite slice";
+    public static final String SPRITE_SCALE = "sprite scale";
+    public static final String MUSIC_CLIPS = "music clips";
+    public static final String EVENT_CLIPS = "event clips";
+    public static final String FIRST_TICK = "first tick";
+    public static final String FIRST_PAINT = "first paint";
+
+    private static final Map<String, long[]> phases = new LinkedHashMap<String, long[]>();
+    private static long origin = System.nanoTime();
+
+    /**
+     * Clears the trace and starts timing from now.
+     */
+    public static synchronized void reset() {
+        phases.clear();
+        origin = System.nanoTime();
+    }
+
+    /**
+     * Marks an instant phase as having happened now.
+     * @param phase The name of the phase
+     */
+    public static void mark(String phase) {
+        long now = System.nanoTime();
+        record(phase, now, now);
+    }
+
+    /**
+     * Records a phase that started at the given time and ended now.
+     * @param phase The name of the phase
+     * @param start The System.nanoTime() the phase started at
+     */
+    public static void record(String phase, long start) {
+        record(phase, start, System.nanoTime());
+    }
+
+    private static void record(String phase, long start, long end) {
+        boolean print;
+        synchronized (StartupTrace.class) {
+            if (phases.containsKey(phase))
+                return;
+            phases.put(phase, new long[] {start - origin, end - origin});
+            print = phase.equals(FIRST_PAINT) && Boolean.getBoolean("doggo.traceStartup");
+        }
+        if (print)
+            System.out.println(toJson());
+    }
+
+    /**
+     * Returns the recorded phases in the order they were recorded, each with its start and
+     * end in nanoseconds since the trace was reset.
+     * @return A copy of the recorded phases
+     */
+    public static synchronized Map<String, long[]> getPhases() {
+        Map<String, long[]> copy = new LinkedHashMap<String, long[]>();
+        for (Map.Entry<String, long[]> phase : phases.entrySet()) {
+            copy.put(phase.getKey(), phase.getValue().clone());
+        }
+        return copy;
+    }
+
+    /**
+     * Describes the trace as a JSON object mapping each phase to its start and end in
+     * milliseconds, e.g. {"main": [0.000, 0.000], "sprite decode": [12.500, 40.125]}.
+     * @return The trace as JSON
+     */
+    public static String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, long[]> phase : getPhases().entrySet()) {
+            if (json.length() > 1)
+                json.append(", ");
+            json.append('"').append(phase.getKey()).append("\": [")
+                .append(toMillis(phase.getValue()[0])).append(", ")
+                .append(toMillis(phase.getValue()[1])).append(']');
+        }
+        return json.append('}').toString();
+    }
+
+    /**
+     * Formats nanoseconds as milliseconds with three decimals.
+     * @param nanos The nanoseconds
+     * @return The milliseconds
+     */
+    public static String toMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+}
@@ -0,0 +1,306 @@
+import java.io.IOException;
+import java.net.URL;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.BooleanControl;
+import javax.sound.sampled.Clip;
+import javax.sound.sampled.FloatControl;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import javax.swing.JOptionPane;
+
+/**
+ * A Playback that streams the resource through a SourceDataLine. A dedicated thread reads
+ * small chunks of the stream and writes them into the line, whose buffer acts as the ring
+ * buffer between the thread and the mixer. Only BUFFER_MILLIS of audio are held in memory,
+ * no matter how long the track is, so it is meant for music.
+ */
+public class StreamPlayback implements Playback {
+
+    /**
+     * The length of audio held in the line's buffer.
+     */
+    public static final int BUFFER_MILLIS = 250;
+
+    private final String RESOURCE;
+    private final Runnable ON_DONE;
+    private AudioInputStream audioInputStream;
+    private SourceDataLine line;
+    private BooleanControl muteControl;
+    private FloatControl volumeControl;
+    private byte[] chunk;
+    private Thread feeder;
+    private boolean mute;
+    private float gain;
+    private int loops;
+    private volatile boolean paused;
+    private volatile boolean closed;
+    private volatile boolean done;
+
+    /**
+     * Creates an unopened StreamPlayback of a class path resource.
+     * @param RESOURCE The resource to play
+     * @param ON_DONE Run on the streaming thread once the audio played to its end
+     */
+    public StreamPlayback(final String RESOURCE, final Runnable ON_DONE) {
+        this.RESOURCE = RESOURCE;
+        this.ON_DONE = ON_DONE;
+        paused = true;
+    }
+
+    /**
+     * Opens the stream and a SourceDataLine with a BUFFER_MILLIS long buffer.
+     */
+    @Override
+    public synchronized boolean open() {
+        if (!openStream())
+            return false;
+        AudioFormat format = audioInputStream.getFormat();
+        int frameSize = Math.max(1, format.getFrameSize());
+        int bufferFrames = Math.max(1, (int) (format.getFrameRate() * BUFFER_MILLIS / 1000));
+        try {
+            line = AudioSystem.getSourceDataLine(format);
+            line.open(format, bufferFrames * frameSize);
+        } catch (LineUnavailableException e) {
+            JOptionPane.showMessageDialog(null, "Doggo Audio Line or IO Error! " + e.getMessage());
+            e.printStackTrace();
+            close();
+            return false;
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage() + " for resource: " + RESOURCE);
+            close();
+            return false;
+        }
+        if (line.isControlSupported(BooleanControl.Type.MUTE))
+            muteControl = (BooleanControl) line.getControl(BooleanControl.Type.MUTE);
+        if (line.isControlSupported(FloatControl.Type.MASTER_GAIN))
+            volumeControl = (FloatControl) line.getControl(FloatControl.Type.MASTER_GAIN);
+        update();
+        // A quarter of the line's buffer per write keeps the line topped up
+        chunk = new byte[Math.max(frameSize, line.getBufferSize() / 4 / frameSize * frameSize)];
+        return true;
+    }
+
+    /**
+     * Opens (or reopens, for looping) the AudioInputStream of the resource, decoding it to
+     * PCM if needed.
+     * @return true if the stream was opened, false otherwise
+     */
+    private boolean openStream() {
+        closeStream();
+        URL url = BiClip.class.getResource(RESOURCE);
+        if (url == null) {
+            System.out.println("Resource incorrectly spelled or not found for: " + RESOURCE);
+            return false;
+        }
+        try {
+            AudioInputStream stream = AudioSystem.getAudioInputStream(url);
+            AudioFormat format = stream.getFormat();
+            if (format.getEncoding() != AudioFormat.Encoding.PCM_SIGNED
+                && format.getEncoding() != AudioFormat.Encoding.PCM_UNSIGNED) {
+                AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED,
+                    format.getSampleRate(), 16, format.getChannels(), format.getChannels() * 2,
+                    format.getSampleRate(), false);
+                stream = AudioSystem.getAudioInputStream(pcm, stream);
+            }
+            audioInputStream = stream;
+            return true;
+        } catch (UnsupportedAudioFileException | IOException | IllegalArgumentException e) {
+            System.out.println(
+                "Doggo Stream IO Error! " + e.getMessage() + " for resource: " + RESOURCE);
+            return false;
+        }
+    }
+
+    /**
+     * Closes the AudioInputStream object.
+     */
+    private void closeStream() {
+        try {
+            if (audioInputStream != null)
+                audioInputStream.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        audioInputStream = null;
+    }
+
+    /**
+     * Keeps the loops left, so resuming a paused loop keeps looping.
+     */
+    @Override
+    public void start() {
+        resume();
+    }
+
+    @Override
+    public synchronized void loop(int loops) {
+        if (line == null || closed)
+            return;
+        this.loops = loops;
+        resume();
+    }
+
+    /**
+     * Starts the line and the streaming thread if it is not running yet.
+     */
+    private synchronized void resume() {
+        if (line == null || closed)
+            return;
+        paused = false;
+        line.start();
+        if (feeder == null) {
+            feeder = new Thread(new Feeder(), "Doggo stream " + RESOURCE);
+            feeder.setDaemon(true);
+            feeder.start();
+        }
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (line == null)
+            return;
+        paused = true;
+        line.stop();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        paused = true;
+        notifyAll();
+        if (line != null) {
+            line.stop();
+            line.flush();
+            line.close();
+        }
+        closeStream();
+        line = null;
+        muteControl = null;
+        volumeControl = null;
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return line != null && line.isOpen();
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return line != null && line.isRunning();
+    }
+
+    @Override
+    public synchronized boolean isActive() {
+        return line != null && line.isActive();
+    }
+
+    @Override
+    public boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public synchronized void setMute(boolean mute) {
+        this.mute = mute;
+        update();
+    }
+
+    @Override
+    public synchronized void setGain(float gain) {
+        this.gain = gain;
+        update();
+    }
+
+    /**
+     * Only the chunk and the line's buffer are resident, regardless of the track length.
+     */
+    @Override
+    public synchronized long getResidentBytes() {
+        if (line == null)
+            return 0;
+        return chunk.length + line.getBufferSize();
+    }
+
+    /**
+     * Sets the controls to the user defined values, if they have been obtained.
+     */
+    private void update() {
+        if (muteControl != null)
+            muteControl.setValue(mute);
+        if (volumeControl != null)
+            volumeControl.setValue(gain);
+    }
+
+    /**
+     * Blocks the streaming thread while paused.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private synchronized void awaitResume() throws InterruptedException {
+        while (paused && !closed) {
+            wait();
+        }
+    }
+
+    /**
+     * Reopens the stream if there are loops left.
+     * @return true if the stream was reopened, false if playing is done
+     */
+    private synchronized boolean nextLoop() {
+        if (closed || loops == 0)
+            return false;
+        if (loops != Clip.LOOP_CONTINUOUSLY)
+            loops--;
+        return openStream();
+    }
+
+    /**
+     * Reads the stream in chunks and writes them into the line until the end of the stream,
+     * or until closed. write() returns early when the line is stopped, the rest of the chunk
+     * is written once resumed.
+     */
+    private class Feeder implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    AudioInputStream stream;
+                    SourceDataLine line;
+                    synchronized (StreamPlayback.this) {
+                        stream = audioInputStream;
+                        line = StreamPlayback.this.line;
+                    }
+                    if (stream == null || line == null)
+                        return;
+                    int read = stream.read(chunk, 0, chunk.length);
+                    if (read < 0) {
+                        if (nextLoop())
+                            continue;
+                        line.drain();
+                        break;
+                    }
+                    int offset = 0;
+                    while (offset < read && !closed) {
+                        offset += line.write(chunk, offset, read - offset);
+                        if (offset < read)
+                            awaitResume();
+                    }
+                }
+            } catch (IOException e) {
+                if (!closed)
+                    System.out.println("Doggo Stream IO Error! " + e.getMessage()
+                        + " for resource: " + RESOURCE);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (!closed) {
+                done = true;
+                ON_DONE.run();
+            }
+        }
+    }
+}
@@ -1,10 +1,598 @@
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 public class TestBench {
 
     public static void main(String[] args) {
-        // Test naming of BiClip
-        BiClip bi = new BiClip("Music/Default/Rock");
-        System.out.println(bi.getName());
+        String bench = args.length > 0 ? args[0] : "";
+        switch (bench) {
+            case "scheduler":
+                compareSchedulers();
+                break;
+            case "idle":
+                compareIdleRates();
+                break;
+            case "fillrate":
+                compareFillRates();
+                break;
+            case "index":
+                compareResourceLookups();
+                break;
+            case "startup":
+                benchmarkStartup(args.length > 1 ? Integer.parseInt(args[1]) : 10,
+                    args.length > 2 ? args[2] : "Husky-sheet.png");
+                break;
+            case "startup-run":
+                runStartup(args[1]);
+                break;
+            case "allocation":
+                checkTickAllocation(args.length > 1 ? Integer.parseInt(args[1]) : 100);
+                break;
+            case "snapshot":
+                checkRenderSnapshots(args.length > 1 ? Integer.parseInt(args[1]) : 5);
+                break;
+            case "metrics":
+                printMetrics(args.length > 1 ? Integer.parseInt(args[1]) : 3);
+                break;
+            default:
+                // Test naming of BiClip
+                BiClip bi = new BiClip("Music/Default/Rock");
+                System.out.println(bi.getName());
+                break;
+        }
+    }
+
+    /**
+     * Runs an empty AnimationEngine with each Scheduler and prints the CPU usage of the
+     * engine thread, so the parking scheduler can be compared against the spinning loop.
+     */
+    private static void compareSchedulers() {
+        final int SECONDS = 5;
+        for (AnimationEngine.Scheduler scheduler : AnimationEngine.Scheduler.values()) {
+            AnimationEngine engine = new AnimationEngine();
+            engine.setScheduler(scheduler);
+            engine.add(new StubObject(false));
+            System.out.println(scheduler + " CPU: "
+                + Math.round(measureCpu(engine, SECONDS) * 100.0 * 100) / 100.0 + "% of one core");
+        }
+    }
+
+    /**
+     * Runs an AnimationEngine with only quiescent objects at the full tick rate, the default
+     * idle tick rate and suspended, printing the CPU usage of the engine thread for each.
+     */
+    private static void compareIdleRates() {
+        final int SECONDS = 5;
+        final double[] IDLE_RATES = {AnimationEngine.DEFAULT_TICK_RATE,
+            AnimationEngine.DEFAULT_IDLE_TICK_RATE, 0};
+        for (double idleRate : IDLE_RATES) {
+            AnimationEngine engine = new AnimationEngine();
+            engine.setIdleTickRate(idleRate);
+            engine.add(new StubObject(true));
+            System.out.println("Idle rate " + idleRate + " CPU: "
+                + Math.round(measureCpu(engine, SECONDS) * 100.0 * 100) / 100.0 + "% of one core");
+        }
+    }
+
+    /**
+     * Paints a 64 by 64 sprite moving across a transparent 4K image, once clearing and
+     * painting the whole image every frame and once only the dirty rectangle found by a
+     * DirtyRegionTracker, printing the time and pixels filled per frame of each.
+     */
+    private static void compareFillRates() {
+        final int WIDTH = 3840, HEIGHT = 2160;
+        final int FRAMES = 600;
+        BufferedImage screen = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB_PRE);
+        MovingObject obj = new MovingObject();
+        AnimatedObject[] objects = {obj};
+        RenderSnapshot snapshot = new RenderSnapshot();
+        for (int pass = 0; pass < 2; pass++) {
+            for (boolean dirtyOnly : new boolean[] {false, true}) {
+                DirtyRegionTracker tracker = new DirtyRegionTracker();
+                long pixels = 0;
+                long start = System.nanoTime();
+                for (int i = 0; i < FRAMES; i++) {
+                    obj.animate();
+                    snapshot.capture(objects, i + 1);
+                    Rectangle clip = new Rectangle(0, 0, WIDTH, HEIGHT);
+                    if (dirtyOnly) {
+                        if (!tracker.update(snapshot))
+                            continue;
+                        clip = tracker.getDirty();
+                    }
+                    Graphics2D g = screen.createGraphics();
+                    g.setClip(clip);
+                    g.setComposite(AlphaComposite.Clear);
+                    g.fillRect(clip.x, clip.y, clip.width, clip.height);
+                    g.setComposite(AlphaComposite.SrcOver);
+                    g.drawImage(obj.getImage(), obj.getX(), obj.getY(), null);
+                    g.dispose();
+                    tracker.drawn(obj, obj.getX(), obj.getY(), obj.getWidth(), obj.getHeight(),
+                        obj.getImage());
+                    pixels += (long) clip.width * clip.height;
+                }
+                long nanos = System.nanoTime() - start;
+                // The first pass only warms up
+                if (pass > 0)
+                    System.out.println((dirtyOnly ? "Dirty rectangle" : "Full screen")
+                        + ": " + (nanos / FRAMES / 1000) + " us/frame, " + (pixels / FRAMES)
+                        + " pixels/frame");
+            }
+        }
+    }
+
+    /**
+     * Writes a JAR with thousands of entries, then times finding a directory's contents by
+     * enumerating the JAR on every lookup (as ResourceParser used to) against building a
+     * ResourceIndex once and looking the directory up in it. The index is built a second
+     * time from its ResourceIndexCache.
+     */
+    private static void compareResourceLookups() {
+        final int DIRECTORIES = 50, FILES = 100, LOOKUPS = 20;
+        File jarFile = null;
+        try {
+            jarFile = File.createTempFile("doggo-index", ".jar");
+            try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jarFile))) {
+                for (int d = 0; d < DIRECTORIES; d++) {
+                    for (int f = 0; f < FILES; f++) {
+                        out.putNextEntry(new JarEntry("Music/Dir" + d + "/Song" + f + ".wav"));
+                        out.closeEntry();
+                    }
+                }
+            }
+            String path = jarFile.getAbsolutePath();
+            int found = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                try (JarFile jar = new JarFile(jarFile)) {
+                    Enumeration<JarEntry> entries = jar.entries();
+                    while (entries.hasMoreElements()) {
+                        if (entries.nextElement().getName().contains("Dir" + (i % DIRECTORIES)))
+                            found++;
+                    }
+                }
+            }
+            long enumerateNanos = (System.nanoTime() - start) / LOOKUPS;
+
+            File cacheDir = Files.createTempDirectory("doggo-cache").toFile();
+            System.setProperty("doggo.cacheDir", cacheDir.getAbsolutePath());
+            start = System.nanoTime();
+            ResourceIndex index = ResourceIndex.build(path);
+            long buildNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            ResourceIndex.build(path);
+            long cachedBuildNanos = System.nanoTime() - start;
+            ResourceIndexCache.getCacheFile(jarFile).delete();
+            cacheDir.delete();
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                found += index.getDirectory("Dir" + (i % DIRECTORIES)).length;
+            }
+            long lookupNanos = (System.nanoTime() - start) / LOOKUPS;
+
+            System.out.println("Entries: " + index.size() + " (matched " + found + ")");
+            System.out.println("Enumerate JAR per lookup: " + enumerateNanos / 1000 + " us");
+            System.out.println("Build index once: " + buildNanos / 1000 + " us");
+            System.out.println("Build index from cache: " + cachedBuildNanos / 1000 + " us");
+            System.out.println("Index lookup: " + lookupNanos / 1000 + " us");
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (jarFile != null)
+                jarFile.delete();
+        }
+    }
+
+    /**
+     * Cold starts a new headless JVM running runStartup() the given number of times and
+     * prints, as JSON, the percentiles of when each StartupTrace phase ended and of how long
+     * it took, in milliseconds. The "process" phase is the lifetime of the whole JVM.
+     * @param RUNS The number of JVMs to start
+     * @param sheet The sprite sheet to load
+     */
+    private static void benchmarkStartup(final int RUNS, String sheet) {
+        final Pattern PHASE = Pattern.compile("\"([^\"]+)\": \\[([0-9.]+), ([0-9.]+)\\]");
+        Map<String, List<double[]>> phases = new LinkedHashMap<String, List<double[]>>();
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator
+            + "java";
+        try {
+            for (int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                Process process = new ProcessBuilder(java, "-Djava.awt.headless=true", "-cp",
+                    System.getProperty("java.class.path"), "TestBench", "startup-run", sheet)
+                    .redirectErrorStream(true).start();
+                String trace = null;
+                try (BufferedReader in = new BufferedReader(
+                    new InputStreamReader(process.getInputStream()))) {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        if (line.startsWith("TRACE "))
+                            trace = line;
+                    }
+                }
+                process.waitFor();
+                double wall = (System.nanoTime() - start) / 1e6;
+                if (trace == null) {
+                    System.out.println("Run " + run + " did not finish");
+                    continue;
+                }
+                Matcher matcher = PHASE.matcher(trace);
+                while (matcher.find()) {
+                    phases.computeIfAbsent(matcher.group(1), k -> new ArrayList<double[]>())
+                        .add(new double[] {Double.parseDouble(matcher.group(2)),
+                            Double.parseDouble(matcher.group(3))});
+                }
+                phases.computeIfAbsent("process", k -> new ArrayList<double[]>())
+                    .add(new double[] {0, wall});
+            }
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        StringBuilder json = new StringBuilder("{\"runs\": " + RUNS + ", \"phases\": {");
+        boolean first = true;
+        for (Map.Entry<String, List<double[]>> phase : phases.entrySet()) {
+            int n = phase.getValue().size();
+            double[] ends = new double[n];
+            double[] durations = new double[n];
+            for (int i = 0; i < n; i++) {
+                ends[i] = phase.getValue().get(i)[1];
+                durations[i] = ends[i] - phase.getValue().get(i)[0];
+            }
+            json.append(first ? "\n  " : ",\n  ").append('"').append(phase.getKey())
+                .append("\": {\"end\": ").append(percentiles(ends))
+                .append(", \"duration\": ").append(percentiles(durations)).append('}');
+            first = false;
+        }
+        System.out.println(json.append("\n}}"));
+    }
+
+    /**
+     * Describes the p50, p90, p99 and max of some values as a JSON object.
+     * @param values The values, which are sorted
+     * @return The percentiles as JSON
+     */
+    private static String percentiles(double[] values) {
+        Arrays.sort(values);
+        StringBuilder json = new StringBuilder("{");
+        final int[] PERCENTILES = {50, 90, 99, 100};
+        for (int p : PERCENTILES) {
+            // Nearest rank
+            int rank = Math.max(1, (int) Math.ceil(p / 100.0 * values.length));
+            json.append(json.length() > 1 ? ", " : "").append(p == 100 ? "\"max\"" : "\"p" + p
+                + "\"").append(": ").append(String.format(Locale.ROOT, "%.3f",
+                    values[rank - 1]));
+        }
+        return json.append('}').toString();
+    }
+
+    /**
+     * Runs the headless part of the startup path once and prints its StartupTrace on a line
+     * starting with "TRACE ": loads through a StartupPipeline, animates the sprites in an
+     * AnimationEngine and paints the first frame offscreen, then waits for the sounds. A
+     * sprite sheet that cannot be loaded is replaced by a blank sprite.
+     * @param sheet The sprite sheet to load
+     */
+    private static void runStartup(String sheet) {
+        StartupTrace.reset();
+        StartupTrace.mark(StartupTrace.MAIN);
+        StartupPipeline startup = new StartupPipeline(sheet, false, "Default");
+        BufferedImage sprite;
+        try {
+            sprite = startup.getSprites()[0];
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Using a blank sprite: " + e);
+            sprite = new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        AnimationEngine engine = new AnimationEngine();
+        AnimatedObject doggo = new StubObject(false, sprite);
+        BufferedImage screen = new BufferedImage(640, 480, BufferedImage.TYPE_INT_ARGB_PRE);
+        CountDownLatch painted = new CountDownLatch(1);
+        engine.setRenderer(() -> {
+            Graphics2D g = screen.createGraphics();
+            g.drawImage(doggo.getImage(), doggo.getX(), doggo.getY(), null);
+            g.dispose();
+            StartupTrace.mark(StartupTrace.FIRST_PAINT);
+            painted.countDown();
+        });
+        engine.add(doggo);
+        new Thread(engine).start();
+        try {
+            painted.await();
+            CompletableFuture.allOf(startup.getSongs(), startup.getEvents(),
+                startup.getBark()).join();
+        } catch (InterruptedException | CompletionException e) {
+            System.out.println(e);
+        }
+        engine.stop();
+        System.out.println("TRACE " + StartupTrace.toJson());
+    }
+
+    /**
+     * Ticks an engine of silent ScreenDoggos chasing a moving pointer on this thread and
+     * prints the bytes allocated per steady state tick, which should be zero. Exits with a
+     * status of 1 when it is not.
+     * @param PETS The number of doggos to tick
+     */
+    private static void checkTickAllocation(final int PETS) {
+        final int WARMUP = 20000, TICKS = 20000;
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+            System.out.println("Allocated bytes are not measurable on this JVM");
+            return;
+        }
+        com.sun.management.ThreadMXBean allocationBean =
+            (com.sun.management.ThreadMXBean) threadBean;
+        long thread = Thread.currentThread().getId();
+
+        BufferedImage[] sprites = new BufferedImage[40];
+        for (int i = 0; i < sprites.length; i++) {
+            sprites[i] = new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB);
+        }
+        AnimationEngine engine = new AnimationEngine();
+        PointerSampler pointer = engine.getPointer();
+        pointer.setSampling(false);
+        for (int i = 0; i < PETS; i++) {
+            ScreenDoggo doggo = new ScreenDoggo(engine, sprites, true);
+            doggo.setLocation(i * 37 % 1920, i * 53 % 1080);
+            engine.add(doggo);
+        }
+
+        for (int i = 0; i < WARMUP; i++) {
+            pointer.set(i * 7 % 1920, i * 3 % 1080);
+            engine.tick();
+        }
+        long start = allocationBean.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < TICKS; i++) {
+            pointer.set(i * 7 % 1920, i * 3 % 1080);
+            engine.tick();
+        }
+        // The measurement itself allocates nothing once warmed up by the first call
+        long allocated = allocationBean.getThreadAllocatedBytes(thread) - start;
+        double perTick = (double) allocated / TICKS;
+        System.out.printf(Locale.ROOT, "Doggos: %d, allocated: %d bytes, per tick: %.3f bytes%n",
+            PETS, allocated, perTick);
+        if (allocated > 0) {
+            System.out.println("FAIL: the tick allocates");
+            System.exit(1);
+        }
+        System.out.println("PASS");
+    }
+
+    /**
+     * Runs an engine of objects that all move alike at 10000 ticks per second while this thread
+     * reads its RenderSnapshots, and prints how many snapshots showed the objects at
+     * different places (torn), which should be none. Exits with a status of 1 when any were.
+     * @param SECONDS How long to read snapshots for
+     */
+    private static void checkRenderSnapshots(final int SECONDS) {
+        AnimationEngine engine = new AnimationEngine();
+        engine.setTickRate(10000);
+        engine.setScheduler(AnimationEngine.Scheduler.SPIN);
+        for (int i = 0; i < 1000; i++) {
+            engine.add(new MovingObject());
+        }
+        Thread engineThread = new Thread(engine);
+        engineThread.start();
+        long reads = 0, torn = 0, lastTick = 0, ticksSeen = 0;
+        long end = System.nanoTime() + SECONDS * 1000000000L;
+        while (System.nanoTime() < end) {
+            RenderSnapshot snapshot = engine.getRenderSnapshot();
+            reads++;
+            if (snapshot.getTick() != lastTick) {
+                lastTick = snapshot.getTick();
+                ticksSeen++;
+            }
+            for (int i = 1; i < snapshot.size(); i++) {
+                if (snapshot.getX(i) != snapshot.getX(0) || snapshot.getY(i) != snapshot.getY(0)) {
+                    torn++;
+                    break;
+                }
+            }
+        }
+        engine.stop();
+        System.out.println("Reads: " + reads + ", ticks seen: " + ticksSeen + " of " + lastTick
+            + ", torn: " + torn);
+        if (torn > 0) {
+            System.out.println("FAIL: a snapshot changed while it was read");
+            System.exit(1);
+        }
+        System.out.println("PASS");
+    }
+
+    /**
+     * Runs an engine of moving objects with a renderer that paints them off screen and
+     * probes the EDT, writing its EngineMetrics to a CSV file. Prints the CSV and the
+     * attributes of the registered MBean as read through the platform MBean server.
+     * @param SECONDS How long to run the engine for
+     */
+    private static void printMetrics(final int SECONDS) {
+        AnimationEngine engine = new AnimationEngine();
+        EngineMetrics metrics = engine.getMetrics();
+        BufferedImage screen = new BufferedImage(1920, 1080, BufferedImage.TYPE_INT_ARGB_PRE);
+        for (int i = 0; i < 100; i++) {
+            engine.add(new MovingObject());
+        }
+        engine.setRenderer(() -> {
+            long start = System.nanoTime();
+            Graphics2D g = screen.createGraphics();
+            RenderSnapshot snapshot = engine.getTickSnapshot();
+            for (int i = 0; i < snapshot.size(); i++) {
+                g.drawImage(snapshot.getImage(i), snapshot.getX(i), snapshot.getY(i), null);
+            }
+            g.dispose();
+            metrics.paint(System.nanoTime() - start);
+            metrics.probeEventQueue();
+        });
+        metrics.register();
+        File csv = null;
+        try {
+            csv = File.createTempFile("doggo-metrics", ".csv");
+            csv.delete();
+            metrics.startCsv(csv, 1 << 20);
+            new Thread(engine).start();
+            Thread.sleep(SECONDS * 1000 + 500);
+            engine.stop();
+            metrics.stopCsv();
+            for (String line : Files.readAllLines(csv.toPath())) {
+                System.out.println(line);
+            }
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = metrics.getMBeanName();
+            for (MBeanAttributeInfo attribute : server.getMBeanInfo(name).getAttributes()) {
+                System.out.println(attribute.getName() + ": "
+                    + server.getAttribute(name, attribute.getName()));
+            }
+        } catch (IOException | InterruptedException | JMException e) {
+            e.printStackTrace();
+        } finally {
+            if (csv != null)
+                csv.delete();
+        }
+    }
+
+    /**
+     * Runs the engine on a new thread for a second of warm up and then the given number of
+     * seconds, measuring the CPU time of the engine thread from outside so a suspended
+     * engine is measured as well.
+     * @param engine The engine to run
+     * @param SECONDS How long to measure the engine for
+     * @return The CPU time used as a fraction of one core
+     */
+    private static double measureCpu(AnimationEngine engine, final int SECONDS) {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        Thread engineThread = new Thread(engine);
+        engineThread.start();
+        double usage = 0;
+        try {
+            Thread.sleep(1000);
+            long cpuStart = threadBean.getThreadCpuTime(engineThread.getId());
+            long wallStart = System.nanoTime();
+            Thread.sleep(SECONDS * 1000);
+            usage = (double) (threadBean.getThreadCpuTime(engineThread.getId()) - cpuStart)
+                / (System.nanoTime() - wallStart);
+        } catch (InterruptedException e) {
+            // Nothing measured
+        }
+        engine.stop();
+        return usage;
+    }
+
+    /**
+     * A 64 by 64 AnimatedObject that does nothing when animated.
+     */
+    private static class StubObject implements AnimatedObject {
+
+        private final BufferedImage image;
+        private final boolean quiescent;
+
+        private StubObject(boolean quiescent) {
+            this(quiescent, new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB));
+        }
+
+        private StubObject(boolean quiescent, BufferedImage image) {
+            this.image = image;
+            this.quiescent = quiescent;
+        }
+
+        @Override
+        public int getX() {
+            return 0;
+        }
+
+        @Override
+        public int getY() {
+            return 0;
+        }
+
+        @Override
+        public int getWidth() {
+            return image.getWidth();
+        }
+
+        @Override
+        public int getHeight() {
+            return image.getHeight();
+        }
+
+        @Override
+        public BufferedImage getImage() {
+            return image;
+        }
+
+        @Override
+        public void animate() {
+            // Nothing to animate
+        }
+
+        @Override
+        public boolean intersects(AnimatedObject obj) {
+            return false;
+        }
+
+        @Override
+        public boolean isQuiescent() {
+            return quiescent;
+        }
+    }
+
+    /**
+     * A StubObject that walks 5 pixels right and 2 down every tick.
+     */
+    private static class MovingObject extends StubObject {
+
+        private int x, y;
+
+        private MovingObject() {
+            super(false);
+        }
+
+        @Override
+        public int getX() {
+            return x;
+        }
+
+        @Override
+        public int getY() {
+            return y;
+        }
+
+        @Override
+        public void animate() {
+            x = (x + 5) % 3000;
+            y = (y + 2) % 2000;
+        }
     }
 
 }
@@ -0,0 +1,15 @@
+/**
+ * Work the AnimationEngine does for many objects at once every tick, before it animates the
+ * objects one by one. A system keeps the state of its objects in arrays and updates them in
+ * one loop, instead of every object updating itself through a call of its own.
+ * @see AnimationEngine#addSystem(TickSystem)
+ */
+public interface TickSystem {
+
+    /**
+     * Updates every object of the system by one tick. Called on the engine thread.
+     * @param seconds The length of the tick in seconds
+     */
+    public void tick(float seconds);
+
+}